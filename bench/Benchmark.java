@@ -0,0 +1,367 @@
+/* Benchmark.java */
+
+package bench;
+
+import java.io.*;
+import java.util.*;
+import player.Board;
+import player.MachinePlayer;
+
+/**
+ *  Benchmarks of the hot paths of Board and MachinePlayer over the fixed
+ *  corpus of Positions.  Every benchmark is warmed up before it is measured,
+ *  and its time per operation is the median of several timed iterations.
+ *
+ *  Usage: java bench.Benchmark [-save file] [-compare file] [name...]
+ *         java bench.Benchmark -verify [games]
+ *  Only the benchmarks whose names start with one of the given names are run.
+ *  -save writes the results to a file, -compare reads the results of an
+ *  earlier run and exits with status 1 if a benchmark got slower than the
+ *  tolerance allows.  -verify runs no benchmarks, it checks the board
+ *  against the naive rules of Reference over random games and exits with
+ *  status 1 if they disagree.
+ */
+public class Benchmark {
+
+  public static final int WARMUP_ITERATIONS = 5;
+  public static final int ITERATIONS = 10;
+  //an iteration repeats its benchmark until this much time was measured
+  public static final long ITERATION_NANOS = 200000000L;
+  //chooseMove is measured at depth 2 up to this depth
+  public static final int MAX_DEPTH = 4;
+  //slowdown against a compared run that counts as a regression
+  public static final double TOLERANCE = 0.10;
+  //random games checked by -verify unless a number is given
+  public static final int VERIFY_GAMES = 100;
+
+  //results of the benchmarked calls are summed here, so the JIT cannot drop them
+  private static long sink;
+
+  private final Map<String, Workload> workloads = new LinkedHashMap<>();
+  private final Map<String, Double> results = new LinkedHashMap<>();
+  private final PrintStream out;
+
+  /**
+   * A piece of work to time.  setUp is called before every run and is not timed.
+   */
+  private abstract static class Workload {
+    void setUp() {
+    }
+
+    //do the work once and return the number of operations done
+    abstract long run();
+  }
+
+  public Benchmark(PrintStream out) {
+    this.out = out;
+    Positions midgame = Positions.midgame();
+    Positions stepPhase = Positions.stepPhase();
+    addBoardWorkloads("midgame", midgame);
+    addBoardWorkloads("step", stepPhase);
+    for (int depth = 2; depth <= MAX_DEPTH; depth++) {
+      addChooseMove("midgame", midgame, depth);
+      addChooseMove("step", stepPhase, depth);
+    }
+  }
+
+  private void addBoardWorkloads(String phase, Positions positions) {
+    final Board[] boards = new Board[positions.size()];
+    final int[] colors = new int[positions.size()];
+    for (int i = 0; i < boards.length; i++) {
+      boards[i] = positions.board(i);
+      colors[i] = positions.toMove(i);
+    }
+    final int[] moves = new int[Board.MAX_MOVES];
+    workloads.put("board.moveRetract." + phase, new Workload() {
+      long run() {
+        long ops = 0;
+        for (int i = 0; i < boards.length; i++) {
+          int count = boards[i].movesGenerator(colors[i], moves);
+          for (int j = 0; j < count; j++) {
+            if (boards[i].move(moves[j], colors[i])) {
+              sink += boards[i].zobristKey();
+            }
+            boards[i].retractMove(moves[j]);
+          }
+          ops += count;
+        }
+        return ops;
+      }
+    });
+    workloads.put("board.success." + phase, new Workload() {
+      long run() {
+        for (Board board : boards) {
+          sink += board.success(Board.BLACK)? 1:0;
+          sink += board.success(Board.WHITE)? 1:0;
+        }
+        return 2 * boards.length;
+      }
+    });
+    //success caches the chips of the last position without a network, so
+    //the workload above only times cache hits; here every call follows a
+    //move of the color and misses the cache, and the time per operation
+    //includes the move and its retraction, compare it with board.moveRetract
+    workloads.put("board.success.uncached." + phase, new Workload() {
+      long run() {
+        long ops = 0;
+        for (int i = 0; i < boards.length; i++) {
+          int count = boards[i].movesGenerator(colors[i], moves);
+          for (int j = 0; j < count; j++) {
+            if (boards[i].move(moves[j], colors[i])) {
+              sink += boards[i].success(colors[i])? 1:0;
+            }
+            boards[i].retractMove(moves[j]);
+          }
+          ops += count;
+        }
+        return ops;
+      }
+    });
+    workloads.put("board.movesGenerator." + phase, new Workload() {
+      long run() {
+        for (int i = 0; i < boards.length; i++) {
+          sink += boards[i].movesGenerator(colors[i], moves);
+        }
+        return boards.length;
+      }
+    });
+    workloads.put("board.connectedChipsNum." + phase, new Workload() {
+      long run() {
+        for (Board board : boards) {
+          sink += board.connectedChipsNum(Board.BLACK);
+          sink += board.connectedChipsNum(Board.WHITE);
+        }
+        return 2 * boards.length;
+      }
+    });
+    final long[][] keys = new long[boards.length][];
+    for (int i = 0; i < boards.length; i++) {
+      keys[i] = boards[i].toKey(colors[i]);
+      checkKey(boards[i], colors[i], keys[i]);
+    }
+    checkRejectedKeys(keys[0]);
+    final long[] key = new long[Board.KEY_LENGTH];
+    workloads.put("board.toKey." + phase, new Workload() {
+      long run() {
+        for (int i = 0; i < boards.length; i++) {
+          boards[i].toKey(colors[i], key);
+          sink += key[0] ^ key[1];
+        }
+        return boards.length;
+      }
+    });
+    final Board scratch = new Board();
+    workloads.put("board.restore." + phase, new Workload() {
+      long run() {
+        for (long[] k : keys) {
+          scratch.restore(k);
+          sink += scratch.zobristKey();
+        }
+        return keys.length;
+      }
+    });
+    workloads.put("board.copy." + phase, new Workload() {
+      long run() {
+        for (Board board : boards) {
+          sink += board.copy().zobristKey();
+        }
+        return boards.length;
+      }
+    });
+  }
+
+  //check that a board restored from its key is the same position,
+  //so the key benchmarks measure a correct round trip
+  private static void checkKey(Board board, int toMove, long[] key) {
+    Board restored = Board.fromKey(key);
+    if (!Arrays.equals(restored.toKey(toMove), key)
+        || Board.toMove(key) != toMove
+        || Board.isStepPhase(key) != (board.chipsNum(toMove) == 10)
+        || restored.zobristKey() != board.zobristKey()
+        || restored.connectedChipsNum(Board.BLACK) != board.connectedChipsNum(Board.BLACK)
+        || restored.connectedChipsNum(Board.WHITE) != board.connectedChipsNum(Board.WHITE)) {
+      throw new IllegalStateException("the key " + Arrays.toString(key) + " does not restore its position");
+    }
+  }
+
+  //check that keys of illegal positions are rejected and leave the board unchanged
+  private static void checkRejectedKeys(long[] key) {
+    //the black chips, without the flags in the corners
+    long black = key[0] & ~0x8100000000000081L;
+    long[][] rejected = {
+      //a key of one word
+      {key[0]},
+      //a white chip on a black chip
+      {key[0], key[1] | Long.lowestOneBit(black)},
+      //a white chip in the corner (7, 7)
+      {key[0], key[1] | 1L << 63},
+      //a black chip in the white goal area at (0, 1)
+      {key[0] | 1L << 8, key[1] & ~(1L << 8)},
+      //the step phase flag of a player with fewer than ten chips
+      {1L << 7, 0},
+      //a black group of three at (2, 2), (3, 2) and (4, 2)
+      {1L << 18 | 1L << 19 | 1L << 20, 0},
+    };
+    Board board = Board.fromKey(key);
+    for (long[] k : rejected) {
+      try {
+        board.restore(k);
+      } catch (IllegalArgumentException e) {
+        if (!Arrays.equals(board.toKey(Board.toMove(key)), key)) {
+          throw new IllegalStateException("the key " + Arrays.toString(k) + " changed the board");
+        }
+        continue;
+      }
+      throw new IllegalStateException("the key " + Arrays.toString(k) + " was not rejected");
+    }
+  }
+
+  private void addChooseMove(String phase, final Positions positions, final int depth) {
+    workloads.put("player.chooseMove." + phase + ".depth" + depth, new Workload() {
+      private final MachinePlayer[] players = new MachinePlayer[positions.size()];
+
+      //the players and their tables are allocated once, so collecting them
+      //does not fall into the measured time, and every search starts a new
+      //game, so the table starts empty
+      void setUp() {
+        for (int i = 0; i < players.length; i++) {
+          if (players[i] == null) {
+            players[i] = new MachinePlayer(positions.toMove(i), depth);
+            players[i].setVerbose(false);
+          }
+          positions.setUp(players[i], i);
+        }
+      }
+
+      long run() {
+        for (MachinePlayer player : players) {
+          sink += player.chooseMove().hashCode();
+        }
+        return players.length;
+      }
+    });
+  }
+
+  /**
+   * Run the benchmarks whose names start with one of the given names
+   * @param names  The names to run, all benchmarks if empty
+   */
+  public void run(List<String> names) {
+    out.printf("%-40s %12s %12s %12s%n", "benchmark", "ns/op", "min", "max");
+    for (Map.Entry<String, Workload> e : workloads.entrySet()) {
+      if (!selected(e.getKey(), names)) {
+        continue;
+      }
+      Workload workload = e.getValue();
+      for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+        iteration(workload);
+      }
+      double[] times = new double[ITERATIONS];
+      for (int i = 0; i < ITERATIONS; i++) {
+        times[i] = iteration(workload);
+      }
+      Arrays.sort(times);
+      double median = (times[(ITERATIONS - 1) / 2] + times[ITERATIONS / 2]) / 2;
+      results.put(e.getKey(), median);
+      out.printf("%-40s %12.1f %12.1f %12.1f%n", e.getKey(), median,
+          times[0], times[ITERATIONS - 1]);
+    }
+  }
+
+  private static boolean selected(String name, List<String> names) {
+    if (names.isEmpty()) {
+      return true;
+    }
+    for (String prefix : names) {
+      if (name.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Repeat a workload for ITERATION_NANOS of measured time
+   * @return the time of one operation in nanoseconds
+   */
+  private static double iteration(Workload workload) {
+    long elapsed = 0;
+    long ops = 0;
+    while (elapsed < ITERATION_NANOS) {
+      workload.setUp();
+      long start = System.nanoTime();
+      ops += workload.run();
+      elapsed += System.nanoTime() - start;
+    }
+    return (double) elapsed / ops;
+  }
+
+  /**
+   * Write the results as lines of a benchmark name and its time per operation
+   */
+  public void save(File file) throws IOException {
+    try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+      for (Map.Entry<String, Double> e : results.entrySet()) {
+        writer.println(e.getKey() + " " + e.getValue());
+      }
+    }
+  }
+
+  /**
+   * Compare the results with the results saved by an earlier run
+   * @return true if no benchmark is slower than the tolerance allows
+   */
+  public boolean compare(File file) throws IOException {
+    boolean passed = true;
+    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.trim().split("\\s+");
+        if (fields.length != 2 || !results.containsKey(fields[0])) {
+          continue;
+        }
+        double before = Double.parseDouble(fields[1]);
+        double after = results.get(fields[0]);
+        double change = (after - before) / before;
+        boolean regressed = change > TOLERANCE;
+        passed &= !regressed;
+        out.printf("%-40s %+7.1f%%%s%n", fields[0], 100 * change, regressed? "  REGRESSION":"");
+      }
+    }
+    return passed;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length > 0 && args[0].equals("-verify")) {
+      int games = args.length > 1? Integer.parseInt(args[1]) : VERIFY_GAMES;
+      try {
+        long checks = new Reference().verify(games, Positions.SEED);
+        System.out.println("verified " + games + " games, " + checks + " moves checked");
+      } catch (IllegalStateException e) {
+        System.out.println("verify failed: " + e.getMessage());
+        System.exit(1);
+      }
+      return;
+    }
+    File saveFile = null;
+    File compareFile = null;
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-save") && i + 1 < args.length) {
+        saveFile = new File(args[++i]);
+      } else if (args[i].equals("-compare") && i + 1 < args.length) {
+        compareFile = new File(args[++i]);
+      } else {
+        names.add(args[i]);
+      }
+    }
+    Benchmark benchmark = new Benchmark(System.out);
+    benchmark.run(names);
+    if (saveFile != null) {
+      benchmark.save(saveFile);
+    }
+    boolean passed = compareFile == null || benchmark.compare(compareFile);
+    System.out.println("checksum: " + sink);
+    System.exit(passed? 0:1);
+  }
+}
@@ -0,0 +1,29 @@
+/* Percentiles.java */
+
+package bench;
+
+import java.util.List;
+
+/**
+ *  Percentiles of measured times, shared by the self-play and the load
+ *  client reports.
+ */
+public final class Percentiles {
+
+  private Percentiles() {
+  }
+
+  /**
+   * Return a percentile of sorted times in milliseconds
+   * @param sorted  The times in nanoseconds, sorted in ascending order
+   * @param p  The percentile as a fraction, 1.0 for the maximum
+   * @return the time in milliseconds, 0 if there are no times
+   */
+  public static double millis(List<Long> sorted, double p) {
+    if (sorted.isEmpty()) {
+      return 0;
+    }
+    int i = (int) Math.ceil(p * sorted.size()) - 1;
+    return sorted.get(Math.max(i, 0)) / 1e6;
+  }
+}
@@ -0,0 +1,133 @@
+/* Positions.java */
+
+package bench;
+
+import java.util.*;
+import player.Board;
+import player.MachinePlayer;
+import player.PackedMove;
+
+/**
+ *  A fixed corpus of positions for the benchmarks.  Every position is the
+ *  result of a random game played from a fixed seed, so the corpus is the
+ *  same on every run as long as the move generator is unchanged.
+ */
+public class Positions {
+
+  //number of positions of each kind
+  public static final int COUNT = 8;
+  //plies played for a position of the add phase and of the step phase
+  public static final int MIDGAME_PLIES = 12;
+  public static final int STEP_PLIES = 26;
+  public static final long SEED = 61;
+
+  //the packed moves that lead to each position
+  private final List<int[]> games = new ArrayList<>();
+
+  private Positions(int plies) {
+    for (int i = 0; i < COUNT; i++) {
+      games.add(randomGame(new Random(SEED + plies * 1000 + i), plies));
+    }
+  }
+
+  /**
+   * Creates the positions of the add phase, with twelve chips on the board.
+   */
+  public static Positions midgame() {
+    return new Positions(MIDGAME_PLIES);
+  }
+
+  /**
+   * Creates the positions of the step phase, with all twenty chips on the board.
+   */
+  public static Positions stepPhase() {
+    return new Positions(STEP_PLIES);
+  }
+
+  public int size() {
+    return games.size();
+  }
+
+  /**
+   * Return the packed moves that lead to a position, white moves first.
+   * @param i  The index of the position
+   */
+  public int[] moves(int i) {
+    return games.get(i).clone();
+  }
+
+  /**
+   * Return the color of the player to move in a position.
+   * @param i  The index of the position
+   */
+  public int toMove(int i) {
+    return games.get(i).length % 2 == 0? Board.WHITE:Board.BLACK;
+  }
+
+  /**
+   * Set up a new board with a position.
+   * @param i  The index of the position
+   */
+  public Board board(int i) {
+    Board board = new Board();
+    int[] game = games.get(i);
+    for (int ply = 0; ply < game.length; ply++) {
+      board.move(game[ply], ply % 2 == 0? Board.WHITE:Board.BLACK);
+    }
+    return board;
+  }
+
+  /**
+   * Set up a player with a position: start a new game, which empties its
+   * table, and play the moves of the position.  The player has to have the
+   * color to move of the position.
+   * @param player  The player
+   * @param i  The index of the position
+   */
+  public void setUp(MachinePlayer player, int i) {
+    player.newGame();
+    int color = toMove(i);
+    int[] game = games.get(i);
+    for (int ply = 0; ply < game.length; ply++) {
+      int mover = ply % 2 == 0? Board.WHITE:Board.BLACK;
+      if (mover == color) {
+        player.forceMove(PackedMove.decode(game[ply]));
+      } else {
+        player.opponentMove(PackedMove.decode(game[ply]));
+      }
+    }
+  }
+
+  /**
+   * Play random moves that do not win, so the game is still going at the end
+   * @param random  The source of the moves
+   * @param plies  The number of moves to play
+   * @return the packed moves played
+   */
+  static int[] randomGame(Random random, int plies) {
+    Board board = new Board();
+    int[] game = new int[plies];
+    int[] moves = new int[Board.MAX_MOVES];
+    for (int ply = 0; ply < plies; ply++) {
+      int color = ply % 2 == 0? Board.WHITE:Board.BLACK;
+      int count = board.movesGenerator(color, moves);
+      int m = PackedMove.NONE;
+      //try the moves from a random start until one does not end the game
+      int start = random.nextInt(count);
+      for (int j = 0; j < count; j++) {
+        int candidate = moves[(start + j) % count];
+        board.move(candidate, color);
+        if (!board.success(Board.WHITE) && !board.success(Board.BLACK)) {
+          m = candidate;
+          break;
+        }
+        board.retractMove(candidate);
+      }
+      if (m == PackedMove.NONE) {
+        throw new IllegalStateException("every move ends the game at ply " + ply);
+      }
+      game[ply] = m;
+    }
+    return game;
+  }
+}
@@ -0,0 +1,292 @@
+/* Reference.java */
+
+package bench;
+
+import java.util.*;
+import player.Board;
+import player.Move;
+import player.PackedMove;
+
+/**
+ *  A naive implementation of the rules, straight from their text, that the
+ *  bitboard code of Board is checked against.  It reads the board only
+ *  through colorAt and walks the grid square by square, so it shares no
+ *  masks, rays or caches with the code it checks.
+ *
+ *  verify plays random games and compares isValidMove, movesGenerator,
+ *  connectedChipsNum and success with the reference after every move and
+ *  every retraction.
+ */
+public class Reference {
+
+  public static final int SIZE = 8;
+  //longest game played, the step phase starts after twenty plies
+  public static final int MAX_PLIES = 80;
+  //chance that a move is retracted again after it was checked
+  public static final double RETRACT = 0.25;
+
+  private final int[][] grid = new int[SIZE][SIZE];
+  private final int[] moves = new int[Board.MAX_MOVES];
+  private long checks;
+
+  /**
+   * Play random games and check every position against the reference
+   * @param games  The number of games to play
+   * @param seed  The seed of the random games
+   * @return the number of checks done
+   * @throws IllegalStateException if the board disagrees with the reference
+   */
+  public long verify(int games, long seed) {
+    Random random = new Random(seed);
+    for (int game = 0; game < games; game++) {
+      Board board = new Board();
+      check(board, Board.WHITE);
+      for (int ply = 0; ply < MAX_PLIES; ply++) {
+        int color = ply % 2 == 0? Board.WHITE:Board.BLACK;
+        int other = color == Board.WHITE? Board.BLACK:Board.WHITE;
+        int count = board.movesGenerator(color, moves);
+        if (count == 0) {
+          break;
+        }
+        int m = moves[random.nextInt(count)];
+        if (!board.move(m, color)) {
+          throw new IllegalStateException("the generated move " + PackedMove.decode(m) + " was rejected");
+        }
+        check(board, other);
+        if (random.nextDouble() < RETRACT) {
+          board.retractMove(m);
+          check(board, color);
+          ply--;
+          continue;
+        }
+        if (board.success(Board.WHITE) || board.success(Board.BLACK)) {
+          break;
+        }
+      }
+    }
+    return checks;
+  }
+
+  //compare a position with the reference, with the given color to move
+  private void check(Board board, int toMove) {
+    for (int x = 0; x < SIZE; x++) {
+      for (int y = 0; y < SIZE; y++) {
+        grid[x][y] = board.colorAt(x, y);
+      }
+    }
+    for (int color = Board.BLACK; color <= Board.WHITE; color++) {
+      if (board.connectedChipsNum(color) != connections(color)) {
+        throw mismatch(board, "connectedChipsNum(" + color + ") is " + board.connectedChipsNum(color)
+            + ", not " + connections(color));
+      }
+      if (board.success(color) != network(color)) {
+        throw mismatch(board, "success(" + color + ") is " + board.success(color));
+      }
+    }
+    Set<String> valid = new HashSet<>();
+    //the squares one off the board are tried too, the board has to reject them
+    for (int x1 = -1; x1 <= SIZE; x1++) {
+      for (int y1 = -1; y1 <= SIZE; y1++) {
+        checkMove(board, toMove, new Move(x1, y1), valid);
+        for (int x2 = -1; x2 <= SIZE; x2++) {
+          for (int y2 = -1; y2 <= SIZE; y2++) {
+            checkMove(board, toMove, new Move(x1, y1, x2, y2), valid);
+          }
+        }
+      }
+    }
+    Set<String> generated = new HashSet<>();
+    int count = board.movesGenerator(toMove, moves);
+    for (int i = 0; i < count; i++) {
+      generated.add(PackedMove.decode(moves[i]).toString());
+    }
+    if (count != generated.size() || !generated.equals(valid)) {
+      throw mismatch(board, "movesGenerator(" + toMove + ") generated " + generated + ", not " + valid);
+    }
+  }
+
+  private void checkMove(Board board, int color, Move m, Set<String> valid) {
+    boolean expected = isValidMove(color, m);
+    if (board.isValidMove(color, m) != expected) {
+      throw mismatch(board, "isValidMove(" + color + ", " + m + ") is " + !expected);
+    }
+    if (expected) {
+      valid.add(m.toString());
+    }
+    checks++;
+  }
+
+  private static IllegalStateException mismatch(Board board, String message) {
+    board.print();
+    return new IllegalStateException(message);
+  }
+
+  private boolean onBoard(int x, int y) {
+    return x >= 0 && x < SIZE && y >= 0 && y < SIZE;
+  }
+
+  private boolean isCorner(int x, int y) {
+    return (x == 0 || x == SIZE - 1) && (y == 0 || y == SIZE - 1);
+  }
+
+  //black goals are the top and bottom rows, white goals the left and right columns
+  private boolean inGoal(int x, int y, int color) {
+    int c = color == Board.BLACK? y : x;
+    return !isCorner(x, y) && (c == 0 || c == SIZE - 1);
+  }
+
+  private boolean inFirstGoal(int x, int y, int color) {
+    return inGoal(x, y, color) && (color == Board.BLACK? y : x) == 0;
+  }
+
+  private boolean inLastGoal(int x, int y, int color) {
+    return inGoal(x, y, color) && (color == Board.BLACK? y : x) == SIZE - 1;
+  }
+
+  private int chips(int color) {
+    int n = 0;
+    for (int[] column : grid) {
+      for (int c : column) {
+        n += c == color? 1:0;
+      }
+    }
+    return n;
+  }
+
+  //the rules of a move: an empty square that is not a corner or in a goal
+  //area of the opponent, an add while the color has fewer than ten chips,
+  //a step of a chip of the color once it has ten, and no group of three or
+  //more adjacent chips of the color afterwards
+  private boolean isValidMove(int color, Move m) {
+    if (m.moveKind == Move.QUIT) {
+      return true;
+    }
+    int other = color == Board.BLACK? Board.WHITE:Board.BLACK;
+    if (!onBoard(m.x1, m.y1) || isCorner(m.x1, m.y1) || inGoal(m.x1, m.y1, other)
+        || grid[m.x1][m.y1] == Board.BLACK || grid[m.x1][m.y1] == Board.WHITE) {
+      return false;
+    }
+    if (m.moveKind == Move.ADD) {
+      if (chips(color) >= 10) {
+        return false;
+      }
+    } else if (m.moveKind == Move.STEP) {
+      if (chips(color) != 10 || !onBoard(m.x2, m.y2) || grid[m.x2][m.y2] != color) {
+        return false;
+      }
+    } else {
+      return false;
+    }
+    int empty = grid[m.x1][m.y1];
+    if (m.moveKind == Move.STEP) {
+      grid[m.x2][m.y2] = empty;
+    }
+    grid[m.x1][m.y1] = color;
+    //a group of three adjacent chips has a chip with two neighbours of its color
+    boolean group = false;
+    for (int x = 0; x < SIZE; x++) {
+      for (int y = 0; y < SIZE; y++) {
+        if (grid[x][y] == color && neighbours(x, y, color) >= 2) {
+          group = true;
+        }
+      }
+    }
+    grid[m.x1][m.y1] = empty;
+    if (m.moveKind == Move.STEP) {
+      grid[m.x2][m.y2] = color;
+    }
+    return !group;
+  }
+
+  private int neighbours(int x, int y, int color) {
+    int n = 0;
+    for (int dx = -1; dx <= 1; dx++) {
+      for (int dy = -1; dy <= 1; dy++) {
+        if ((dx != 0 || dy != 0) && onBoard(x + dx, y + dy) && grid[x + dx][y + dy] == color) {
+          n++;
+        }
+      }
+    }
+    return n;
+  }
+
+  //two chips of a color are connected if they are on a common row, column
+  //or diagonal with no chip of either color between them
+  private boolean connected(int x1, int y1, int x2, int y2) {
+    int dx = x2 - x1;
+    int dy = y2 - y1;
+    if ((dx == 0 && dy == 0) || (dx != 0 && dy != 0 && Math.abs(dx) != Math.abs(dy))) {
+      return false;
+    }
+    int steps = Math.max(Math.abs(dx), Math.abs(dy));
+    for (int i = 1; i < steps; i++) {
+      int c = grid[x1 + i * Integer.signum(dx)][y1 + i * Integer.signum(dy)];
+      if (c == Board.BLACK || c == Board.WHITE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  //the number of connections of a color, counted at both chips
+  private int connections(int color) {
+    int n = 0;
+    for (int a = 0; a < SIZE * SIZE; a++) {
+      for (int b = 0; b < SIZE * SIZE; b++) {
+        if (a != b && grid[a % SIZE][a / SIZE] == color && grid[b % SIZE][b / SIZE] == color
+            && connected(a % SIZE, a / SIZE, b % SIZE, b / SIZE)) {
+          n++;
+        }
+      }
+    }
+    return n;
+  }
+
+  //a network is a path of six or more connected chips of the color from
+  //one of its goal areas to the other, with no other chip in a goal area
+  //and a turn at every chip of the path
+  private boolean network(int color) {
+    boolean[][] visited = new boolean[SIZE][SIZE];
+    for (int x = 0; x < SIZE; x++) {
+      for (int y = 0; y < SIZE; y++) {
+        if (grid[x][y] == color && inFirstGoal(x, y, color)) {
+          visited[x][y] = true;
+          if (extend(color, x, y, 0, 0, visited, 1)) {
+            return true;
+          }
+          visited[x][y] = false;
+        }
+      }
+    }
+    return false;
+  }
+
+  private boolean extend(int color, int x, int y, int lastDx, int lastDy,
+      boolean[][] visited, int length) {
+    for (int nx = 0; nx < SIZE; nx++) {
+      for (int ny = 0; ny < SIZE; ny++) {
+        if (grid[nx][ny] != color || visited[nx][ny] || !connected(x, y, nx, ny)) {
+          continue;
+        }
+        int dx = Integer.signum(nx - x);
+        int dy = Integer.signum(ny - y);
+        if (dx == lastDx && dy == lastDy) {
+          continue;
+        }
+        if (inLastGoal(nx, ny, color)) {
+          if (length + 1 >= 6) {
+            return true;
+          }
+        } else if (!inGoal(nx, ny, color)) {
+          visited[nx][ny] = true;
+          boolean found = extend(color, nx, ny, dx, dy, visited, length + 1);
+          visited[nx][ny] = false;
+          if (found) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+}
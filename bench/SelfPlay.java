@@ -0,0 +1,261 @@
+/* SelfPlay.java */
+
+package bench;
+
+import java.util.*;
+import java.util.concurrent.*;
+import player.Board;
+import player.Difficulty;
+import player.MachinePlayer;
+import player.Move;
+import player.PackedMove;
+
+/**
+ *  Plays many games between two machine players without the game window,
+ *  one game per thread of a pool with a thread for every core.  Every game
+ *  starts from a random opening, and each opening is played twice with the
+ *  colors swapped, so neither player gains from the openings.
+ *
+ *  Usage: java bench.SelfPlay [-games n] [-threads n] [-opening plies]
+ *         [-maxplies n] [-seed n] [-a player] [-b player]
+ *  A player is given as a search depth and an optional time limit of a
+ *  move in milliseconds, which searches with iterative deepening, as in
+ *  4:100, or as the name of a difficulty level, as in easy.
+ */
+public class SelfPlay {
+
+  public static final int GAMES = 100;
+  public static final int OPENING_PLIES = 4;
+  //a game that lasts longer is a draw, the step phase can go on forever
+  public static final int MAX_PLIES = 200;
+  public static final long SEED = 61;
+
+  private final int threads;
+  private final int openingPlies;
+  private final int maxPlies;
+  private final long seed;
+  private final Settings[] settings;
+
+  /**
+   * The search settings of a player.
+   */
+  static final class Settings {
+    final int depth;
+    final long timeLimit;
+    //the level of the player, or null to search with depth and timeLimit
+    final Difficulty difficulty;
+
+    Settings(int depth, long timeLimit) {
+      this.depth = depth;
+      this.timeLimit = timeLimit;
+      this.difficulty = null;
+    }
+
+    Settings(Difficulty difficulty) {
+      this.depth = difficulty.searchDepth;
+      this.timeLimit = difficulty.timeLimit;
+      this.difficulty = difficulty;
+    }
+
+    //parse depth[:ms] or the name of a difficulty level
+    static Settings parse(String s) {
+      if (!Character.isDigit(s.charAt(0))) {
+        return new Settings(Difficulty.valueOf(s.toUpperCase()));
+      }
+      String[] fields = s.split(":");
+      return new Settings(Integer.parseInt(fields[0]),
+          fields.length > 1? Long.parseLong(fields[1]):0);
+    }
+
+    MachinePlayer newPlayer(int color) {
+      MachinePlayer player = difficulty != null? new MachinePlayer(color, difficulty)
+          : new MachinePlayer(color, depth, timeLimit);
+      player.setVerbose(false);
+      return player;
+    }
+
+    public String toString() {
+      if (difficulty != null) {
+        return difficulty.name().toLowerCase();
+      }
+      return "depth " + depth + (timeLimit > 0? ", " + timeLimit + " ms":"");
+    }
+  }
+
+  /**
+   * The outcome of one game.
+   */
+  static final class Result {
+    //index of the winning player, -1 for a draw
+    int winner = -1;
+    int plies;
+    //time of every move of each player in nanoseconds
+    final List<List<Long>> latencies = Arrays.asList(new ArrayList<Long>(), new ArrayList<Long>());
+    final long[] nodes = new long[2];
+    final long[] nanos = new long[2];
+  }
+
+  public SelfPlay(int threads, int openingPlies, int maxPlies, long seed, Settings a, Settings b) {
+    this.threads = threads;
+    this.openingPlies = openingPlies;
+    this.maxPlies = maxPlies;
+    this.seed = seed;
+    this.settings = new Settings[] {a, b};
+  }
+
+  /**
+   * Play one game
+   * @param opening  The packed moves of the opening, white moves first
+   * @param white  The index of the player with the white chips
+   */
+  Result play(int[] opening, int white) {
+    Result result = new Result();
+    MachinePlayer[] players = new MachinePlayer[2];
+    int[] colors = new int[2];
+    colors[white] = Board.WHITE;
+    colors[1 - white] = Board.BLACK;
+    for (int i = 0; i < 2; i++) {
+      players[i] = settings[i].newPlayer(colors[i]);
+    }
+    //the referee board decides when the game is over
+    Board board = new Board();
+    int ply = 0;
+    for (; ply < opening.length; ply++) {
+      int mover = ply % 2 == 0? white:1 - white;
+      Move m = PackedMove.decode(opening[ply]);
+      players[mover].forceMove(m);
+      players[1 - mover].opponentMove(m);
+      board.move(opening[ply], colors[mover]);
+    }
+    result.plies = opening.length;
+    for (; ply < maxPlies; ply++) {
+      int mover = ply % 2 == 0? white:1 - white;
+      long start = System.nanoTime();
+      Move m = players[mover].chooseMove();
+      long nanos = System.nanoTime() - start;
+      result.plies++;
+      result.latencies.get(mover).add(nanos);
+      result.nanos[mover] += nanos;
+      result.nodes[mover] += players[mover].getNodesSearched();
+      if (m == null || !board.isValidMove(colors[mover], m)) {
+        //a player without a legal move loses
+        result.winner = 1 - mover;
+        break;
+      }
+      board.move(m, colors[mover]);
+      players[1 - mover].opponentMove(m);
+      //a move that completes networks of both players wins for the opponent
+      if (board.success(colors[1 - mover])) {
+        result.winner = 1 - mover;
+        break;
+      }
+      if (board.success(colors[mover])) {
+        result.winner = mover;
+        break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Play the games on a pool of threads and print a report
+   * @param games  The number of games, rounded up to an even number
+   */
+  public void run(int games) throws InterruptedException, ExecutionException {
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<Result>> futures = new ArrayList<>();
+    long start = System.nanoTime();
+    for (int i = 0; i < (games + 1) / 2; i++) {
+      final int[] opening = Positions.randomGame(new Random(seed + i), openingPlies);
+      for (int white = 0; white < 2; white++) {
+        final int w = white;
+        futures.add(pool.submit(new Callable<Result>() {
+          public Result call() {
+            return play(opening, w);
+          }
+        }));
+      }
+    }
+    int[] wins = new int[2];
+    int draws = 0;
+    long plies = 0;
+    List<List<Long>> latencies = Arrays.asList(new ArrayList<Long>(), new ArrayList<Long>());
+    long[] nodes = new long[2];
+    long[] nanos = new long[2];
+    for (Future<Result> future : futures) {
+      Result result = future.get();
+      if (result.winner < 0) {
+        draws++;
+      } else {
+        wins[result.winner]++;
+      }
+      plies += result.plies;
+      for (int i = 0; i < 2; i++) {
+        latencies.get(i).addAll(result.latencies.get(i));
+        nodes[i] += result.nodes[i];
+        nanos[i] += result.nanos[i];
+      }
+    }
+    long wall = System.nanoTime() - start;
+    pool.shutdown();
+    report(futures.size(), wins, draws, plies, latencies, nodes, nanos, wall);
+  }
+
+  private void report(int games, int[] wins, int draws, long plies, List<List<Long>> latencies,
+      long[] nodes, long[] nanos, long wall) {
+    System.out.printf("%d games on %d threads, %.1f plies per game, %.1f s%n",
+        games, threads, (double) plies / games, wall / 1e9);
+    System.out.printf("%-8s %-20s %8s %10s %10s %10s %10s %12s%n",
+        "player", "settings", "wins", "p50 ms", "p90 ms", "p99 ms", "max ms", "nodes/s");
+    for (int i = 0; i < 2; i++) {
+      List<Long> times = latencies.get(i);
+      Collections.sort(times);
+      System.out.printf("%-8s %-20s %7.1f%% %10.2f %10.2f %10.2f %10.2f %12.0f%n",
+          i == 0? "a":"b", settings[i], 100.0 * wins[i] / games,
+          Percentiles.millis(times, 0.50), Percentiles.millis(times, 0.90),
+          Percentiles.millis(times, 0.99), Percentiles.millis(times, 1.0),
+          nanos[i] == 0? 0 : nodes[i] * 1e9 / nanos[i]);
+    }
+    System.out.printf("draws %.1f%%, total %.0f nodes/s%n",
+        100.0 * draws / games, (nodes[0] + nodes[1]) * 1e9 / wall);
+  }
+
+  public static void main(String[] args) throws Exception {
+    int games = GAMES;
+    int threads = Runtime.getRuntime().availableProcessors();
+    int openingPlies = OPENING_PLIES;
+    int maxPlies = MAX_PLIES;
+    long seed = SEED;
+    Settings a = new Settings(3, 0);
+    Settings b = new Settings(3, 0);
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      String value = args[i + 1];
+      switch (args[i]) {
+      case "-games":
+        games = Integer.parseInt(value);
+        break;
+      case "-threads":
+        threads = Integer.parseInt(value);
+        break;
+      case "-opening":
+        openingPlies = Integer.parseInt(value);
+        break;
+      case "-maxplies":
+        maxPlies = Integer.parseInt(value);
+        break;
+      case "-seed":
+        seed = Long.parseLong(value);
+        break;
+      case "-a":
+        a = Settings.parse(value);
+        break;
+      case "-b":
+        b = Settings.parse(value);
+        break;
+      default:
+        throw new IllegalArgumentException("unknown option " + args[i]);
+      }
+    }
+    new SelfPlay(threads, openingPlies, maxPlies, seed, a, b).run(games);
+  }
+}
@@ -0,0 +1,121 @@
+/* BoardBenchmark.java */
+
+package bench.jmh;
+
+import bench.Positions;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import player.Board;
+
+/**
+ *  JMH benchmarks of the hot paths of Board over the fixed corpus of
+ *  Positions, the same workloads as the board benchmarks of
+ *  bench.Benchmark.  Every benchmark does one pass over the positions of a
+ *  phase, so its score is the time of a pass.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardBenchmark {
+
+  @Param({"midgame", "step"})
+  public String phase;
+
+  private Board[] boards;
+  private int[] colors;
+  private long[][] keys;
+  private final int[] moves = new int[Board.MAX_MOVES];
+  private final long[] key = new long[Board.KEY_LENGTH];
+  private final Board scratch = new Board();
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Positions positions = phase.equals("step")? Positions.stepPhase() : Positions.midgame();
+    boards = new Board[positions.size()];
+    colors = new int[positions.size()];
+    keys = new long[positions.size()][];
+    for (int i = 0; i < boards.length; i++) {
+      boards[i] = positions.board(i);
+      colors[i] = positions.toMove(i);
+      keys[i] = boards[i].toKey(colors[i]);
+    }
+  }
+
+  @Benchmark
+  public void moveRetract(Blackhole blackhole) {
+    for (int i = 0; i < boards.length; i++) {
+      int count = boards[i].movesGenerator(colors[i], moves);
+      for (int j = 0; j < count; j++) {
+        if (boards[i].move(moves[j], colors[i])) {
+          blackhole.consume(boards[i].zobristKey());
+        }
+        boards[i].retractMove(moves[j]);
+      }
+    }
+  }
+
+  @Benchmark
+  public void success(Blackhole blackhole) {
+    for (Board board : boards) {
+      blackhole.consume(board.success(Board.BLACK));
+      blackhole.consume(board.success(Board.WHITE));
+    }
+  }
+
+  //every call of success follows a move of the color, so it misses the
+  //cache of the last position without a network, unlike success above
+  @Benchmark
+  public void successUncached(Blackhole blackhole) {
+    for (int i = 0; i < boards.length; i++) {
+      int count = boards[i].movesGenerator(colors[i], moves);
+      for (int j = 0; j < count; j++) {
+        if (boards[i].move(moves[j], colors[i])) {
+          blackhole.consume(boards[i].success(colors[i]));
+        }
+        boards[i].retractMove(moves[j]);
+      }
+    }
+  }
+
+  @Benchmark
+  public void movesGenerator(Blackhole blackhole) {
+    for (int i = 0; i < boards.length; i++) {
+      blackhole.consume(boards[i].movesGenerator(colors[i], moves));
+    }
+  }
+
+  @Benchmark
+  public void connectedChipsNum(Blackhole blackhole) {
+    for (Board board : boards) {
+      blackhole.consume(board.connectedChipsNum(Board.BLACK));
+      blackhole.consume(board.connectedChipsNum(Board.WHITE));
+    }
+  }
+
+  @Benchmark
+  public void toKey(Blackhole blackhole) {
+    for (int i = 0; i < boards.length; i++) {
+      boards[i].toKey(colors[i], key);
+      blackhole.consume(key[0] ^ key[1]);
+    }
+  }
+
+  @Benchmark
+  public void restore(Blackhole blackhole) {
+    for (long[] k : keys) {
+      scratch.restore(k);
+      blackhole.consume(scratch.zobristKey());
+    }
+  }
+
+  @Benchmark
+  public void copy(Blackhole blackhole) {
+    for (Board board : boards) {
+      blackhole.consume(board.copy().zobristKey());
+    }
+  }
+}
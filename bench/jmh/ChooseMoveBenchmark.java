@@ -0,0 +1,67 @@
+/* ChooseMoveBenchmark.java */
+
+package bench.jmh;
+
+import bench.Positions;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import player.MachinePlayer;
+
+/**
+ *  JMH benchmark of chooseMove over the fixed corpus of Positions, the same
+ *  workload as the chooseMove benchmarks of bench.Benchmark.  The players
+ *  and their tables are allocated once per trial, and before every
+ *  invocation each player starts a new game, so every search starts with
+ *  an empty table.  The score is the time of one search of every position.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChooseMoveBenchmark {
+
+  @Param({"midgame", "step"})
+  public String phase;
+
+  @Param({"2", "3", "4"})
+  public int depth;
+
+  private Positions positions;
+  private MachinePlayer[] players;
+
+  @Setup(Level.Trial)
+  public void setUpTrial() {
+    positions = phase.equals("step")? Positions.stepPhase() : Positions.midgame();
+    players = new MachinePlayer[positions.size()];
+    for (int i = 0; i < players.length; i++) {
+      players[i] = new MachinePlayer(positions.toMove(i), depth);
+      players[i].setVerbose(false);
+    }
+  }
+
+  //a search takes milliseconds, so setting up every invocation does not
+  //disturb the timing
+  @Setup(Level.Invocation)
+  public void setUpInvocation() {
+    for (int i = 0; i < players.length; i++) {
+      positions.setUp(players[i], i);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    for (MachinePlayer player : players) {
+      player.close();
+    }
+  }
+
+  @Benchmark
+  public void chooseMove(Blackhole blackhole) {
+    for (MachinePlayer player : players) {
+      blackhole.consume(player.chooseMove());
+    }
+  }
+}
@@ -1,9 +1,9 @@
 package player;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
-import java.util.Stack;
+import java.util.Random;
 
 public class Board {
   
@@ -14,61 +14,241 @@ public class Board {
   public final int EMPTY = -1;
   public final int DEAD = -2;
   
-  //represent a board
-  private int[][] board;
-
-  //save chips as a list, chips in the goal area are expected to 
-  //be in the front of the list
-  private LinkedList<ConnectedChip> blackChips;
-  private LinkedList<ConnectedChip> whiteChips;
-  private LinkedList<ConnectedChip> allChips;
+  //upper bound of the number of generated moves:
+  //each of the 48 squares a color may use, times its 10 chips
+  public static final int MAX_MOVES = 480;
   
-  //TODO: save all adds and removes of chips in it
-  protected Stack<LinkedList<MoveEffect>> moveEffects;
+  //represent a board as one bitboard per color, see Squares for the layout
+  private long[] pieces;
+  private long occupied;
   
-  public Board() {
-    board = new int[SIZE][SIZE];
-    for (int i = 0; i < SIZE; i++) {
-      for (int j = 0; j < SIZE; j++) {
-        board[i][j] = EMPTY;
+  //random numbers for Zobrist hashing, one per color and square
+  //a fixed seed keeps keys identical between runs
+  private static final long[][] ZOBRIST = new long[2][Squares.NUM];
+  private static final long ZOBRIST_WHITE_TO_MOVE;
+  static {
+    Random random = new Random(0x6E6574776F726BL);
+    for (int color = BLACK; color <= WHITE; color++) {
+      for (int sq = 0; sq < Squares.NUM; sq++) {
+        ZOBRIST[color][sq] = random.nextLong();
       }
     }
-    board[0][0] = DEAD;
-    board[0][SIZE - 1] = DEAD;
-    board[SIZE - 1][0] = DEAD;
-    board[SIZE - 1][SIZE -1] = DEAD;
-    blackChips = new LinkedList<>();
-    whiteChips = new LinkedList<>();
-    allChips = new LinkedList<>();
-    moveEffects = new Stack<>();
+    ZOBRIST_WHITE_TO_MOVE = random.nextLong();
   }
   
+  //Zobrist keys of the chips on the board mapped by each symmetry of
+  //Squares.SYMMETRY, updated with every chip put or cleared
+  //zobrist[0] is the key of the board itself
+  private long[] zobrist;
+  
+  //the chips of each color when success last found no network, the enemy
+  //chips at that time, and the squares where an enemy chip changes the
+  //connections; there is still no network while those are the same
+  private long[] noNetworkOwn;
+  private long[] noNetworkEnemy;
+  private long[] noNetworkBlockers;
+  
+  //number of connections of each color, counted at both chips,
+  //kept up to date by every connection made or broken
+  private int[] connections;
+
+  //the chip on each square, null if the square has no chip
+  private ConnectedChip[] chipAt;
+  //one chip object per color and square, reused by every move to the square
+  private ConnectedChip[][] chipPool;
+  
+  //undo journal of the connections changed by moves
+  //an entry is first square | second square << 6, plus MADE for a connection
+  //made by the move, without it the move broke the connection
+  private int[] journal;
+  private int journalSize;
+  //frames[i] is the journal size before the i-th move that is not retracted yet,
+  //or REJECTED if the move was rejected without changing the board
+  private int[] frames;
+  private int frameCount;
+  private static final int MADE = 1 << 12;
+  private static final int REJECTED = -1;
+
+  //a key of a position is two longs, see toKey
+  public static final int KEY_LENGTH = 2;
+  //flags of a key in the dead corners (0, 0) and (7, 0)
+  private static final long KEY_WHITE_TO_MOVE = Squares.bit(0, 0);
+  private static final long KEY_STEP_PHASE = Squares.bit(Squares.SIZE - 1, 0);
+
+  public Board() {
+    pieces = new long[2];
+    occupied = 0;
+    zobrist = new long[Squares.SYMMETRIES];
+    noNetworkOwn = new long[2];
+    noNetworkEnemy = new long[2];
+    noNetworkBlockers = new long[2];
+    connections = new int[2];
+    chipAt = new ConnectedChip[Squares.NUM];
+    chipPool = new ConnectedChip[2][Squares.NUM];
+    journal = new int[256];
+    frames = new int[64];
+  }
+  
+  //return a copy of the board with the same chips
+  //the connection graph of the copy is rebuilt from the bitboards,
+  //so moves made before the copy cannot be retracted on it
+  public Board copy() {
+    Board copy = new Board();
+    copy.load(pieces[BLACK], pieces[WHITE]);
+    return copy;
+  }
+
+  //return the key of the position with the given color to move:
+  //the black chips in key[0] and the white chips in key[1], as bitboards,
+  //with the color to move and the phase in the dead corners of key[0]
+  public long[] toKey(int toMove) {
+    long[] key = new long[KEY_LENGTH];
+    toKey(toMove, key);
+    return key;
+  }
+
+  //write the key of the position with the given color to move to an array
+  public void toKey(int toMove, long[] key) {
+    long flags = toMove == WHITE? KEY_WHITE_TO_MOVE : 0;
+    if (Long.bitCount(pieces[toMove]) == 10) {
+      flags |= KEY_STEP_PHASE;
+    }
+    key[0] = pieces[BLACK] | flags;
+    key[1] = pieces[WHITE];
+  }
+
+  //return a new board with the chips of a key
+  public static Board fromKey(long[] key) {
+    Board board = new Board();
+    board.restore(key);
+    return board;
+  }
+
+  //set the board to the chips of a key, reusing its chip objects
+  //moves made before cannot be retracted afterwards
+  //throw IllegalArgumentException without changing the board if the key
+  //is not the key of a legal position
+  public void restore(long[] key) {
+    if (!isKey(key)) {
+      throw new IllegalArgumentException("not a key of a position: " + Arrays.toString(key));
+    }
+    long black = key[0] & ~Squares.DEAD;
+    long white = key[1];
+    for (long chips = occupied; chips != 0; chips &= chips - 1) {
+      int sq = Long.numberOfTrailingZeros(chips);
+      chipAt[sq].clearConnections();
+      chipAt[sq] = null;
+    }
+    pieces[BLACK] = 0;
+    pieces[WHITE] = 0;
+    occupied = 0;
+    Arrays.fill(zobrist, 0);
+    Arrays.fill(noNetworkOwn, 0);
+    Arrays.fill(noNetworkEnemy, 0);
+    Arrays.fill(noNetworkBlockers, 0);
+    Arrays.fill(connections, 0);
+    journalSize = 0;
+    frameCount = 0;
+    load(black, white);
+  }
+
+  //return the color to move of a key
+  public static int toMove(long[] key) {
+    return (key[0] & KEY_WHITE_TO_MOVE) != 0? WHITE : BLACK;
+  }
+
+  //indicate whether the color to move of a key has all its chips on the board
+  public static boolean isStepPhase(long[] key) {
+    return (key[0] & KEY_STEP_PHASE) != 0;
+  }
+
+  //indicate whether a key holds a legal position: the flags only in their
+  //corners and the phase flag set as toKey sets it, no chip on a dead square,
+  //on another chip or in a goal area of the other color, at most ten chips
+  //of each color, and no chip with two neighbours of its color, which would
+  //make a group of three and could not be connected by addChip
+  private static boolean isKey(long[] key) {
+    if (key == null || key.length != KEY_LENGTH) {
+      return false;
+    }
+    long black = key[0] & ~Squares.DEAD;
+    long white = key[1];
+    if ((key[0] & Squares.DEAD & ~(KEY_WHITE_TO_MOVE | KEY_STEP_PHASE)) != 0
+        || (white & Squares.DEAD) != 0 || (black & white) != 0
+        || (black & Squares.GOAL[WHITE]) != 0 || (white & Squares.GOAL[BLACK]) != 0
+        || Long.bitCount(black) > 10 || Long.bitCount(white) > 10) {
+      return false;
+    }
+    long toMove = toMove(key) == WHITE? white : black;
+    if (isStepPhase(key) != (Long.bitCount(toMove) == 10)) {
+      return false;
+    }
+    for (int color = BLACK; color <= WHITE; color++) {
+      long own = color == BLACK? black : white;
+      for (long chips = own; chips != 0; chips &= chips - 1) {
+        int sq = Long.numberOfTrailingZeros(chips);
+        if (Long.bitCount(Squares.NEIGHBOURS[sq] & own) > 1) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  //put chips on an empty board and connect them
+  //all chips are on the bitboards before the first one connects, so every
+  //connection is made once, when the second of its chips is added
+  private void load(long black, long white) {
+    for (long chips = black; chips != 0; chips &= chips - 1) {
+      putChip(Long.numberOfTrailingZeros(chips), BLACK);
+    }
+    for (long chips = white; chips != 0; chips &= chips - 1) {
+      putChip(Long.numberOfTrailingZeros(chips), WHITE);
+    }
+    for (int color = BLACK; color <= WHITE; color++) {
+      for (long chips = pieces[color]; chips != 0; chips &= chips - 1) {
+        int sq = Long.numberOfTrailingZeros(chips);
+        addChip(chip(sq, color));
+      }
+    }
+  }
+
   //Execute a move on the board
   //return false if a group of three chips is formed after the move
   public boolean move(Move m, int color) {
-    ConnectedChip addedChip = null;
-    switch(m.moveKind) {
+    return move(PackedMove.encode(m), color);
+  }
+  
+  //Execute a move packed by PackedMove on the board
+  //return false if a group of three chips is formed after the move,
+  //the board is then left unchanged but the move still has to be retracted
+  public boolean move(int m, int color) {
+    int to = PackedMove.to(m);
+    int kind = PackedMove.kind(m);
+    if (kind != Move.QUIT 
+        && (clusterMask(color, kind == Move.STEP? PackedMove.from(m) : -1) & Squares.bit(to)) != 0) {
+      pushFrame(REJECTED);
+      return false;
+    }
+    switch(kind) {
       case Move.ADD:
-        board[m.x1][m.y1] = color;
-        addedChip = new ConnectedChip(m.x1, m.y1, color);
-        if (!addChip(addedChip)) {
-          this.moveEffects.push(null);
-          return false;
-        }
+        pushFrame(journalSize);
+        putChip(to, color);
         //After an add-kind move, some connections may be broken
-        checkConnections(addedChip);
+        breakConnections(to);
+        //the group rule was checked above, so the chip can always be added
+        addChip(chip(to, color));
         break;
       case Move.STEP:
-        board[m.x2][m.y2] = EMPTY;
-        removeChip(new Chip(m.x2, m.y2, color));
-        board[m.x1][m.y1] = color;
-        addedChip = new ConnectedChip(m.x1, m.y1, color);
-        if (!addChip(addedChip)) {
-          this.moveEffects.push(null);
-          return false;
-        }
-        //After a step-kind move, some connections may be broken and some may be added
-        updateConnections(addedChip);
+        pushFrame(journalSize);
+        int from = PackedMove.from(m);
+        clearChip(from, color);
+        removeChip(chipAt[from]);
+        //After a step-kind move, some connections may be added and some may be broken
+        makeConnections(from);
+        putChip(to, color);
+        breakConnections(to);
+        addChip(chip(to, color));
         break;
       case Move.QUIT:
         break;
@@ -78,57 +258,202 @@ public class Board {
   
   //retract a move
   public void retractMove(Move m) {
-    switch(m.moveKind) {
-      case Move.ADD:
-        removeChip(new Chip(m.x1, m.y1, board[m.x1][m.y1]));
-        board[m.x1][m.y1] = EMPTY;
-        break;
-      case Move.STEP:
-        int color = board[m.x1][m.y1];
-        board[m.x2][m.y2] = color;
-        addChip(new ConnectedChip(m.x2, m.y2, color));
-        board[m.x1][m.y1] = EMPTY;
-        removeChip(new Chip(m.x1, m.y1, color));
-        break;
-      default:
-          return;
+    retractMove(PackedMove.encode(m));
+  }
+  
+  //retract a move packed by PackedMove
+  public void retractMove(int m) {
+    if (PackedMove.kind(m) == Move.QUIT) {
+      return;
+    }
+    int frame = frames[--frameCount];
+    if (frame == REJECTED) {
+      //the move was rejected without changing the board
+      return;
+    }
+    int to = PackedMove.to(m);
+    ConnectedChip chip = chipAt[to];
+    int color = chip.color;
+    if (PackedMove.kind(m) == Move.ADD) {
+      removeChip(chip);
+      clearChip(to, color);
+      restoreConnections(frame);
+    } else {
+      //fix bug: take the chip away before putting it back,
+      //otherwise it blocks the connections of the old position
+      int from = PackedMove.from(m);
+      clearChip(to, color);
+      removeChip(chip);
+      //the connections through the old position are restored before
+      //the chip connects from there again
+      restoreConnections(frame);
+      putChip(from, color);
+      addChip(chip(from, color));
     }
-    restoreConnections();
+  }
+  
+  //start the journal entries of a move
+  private void pushFrame(int frame) {
+    if (frameCount == frames.length) {
+      frames = Arrays.copyOf(frames, 2 * frames.length);
+    }
+    frames[frameCount++] = frame;
+  }
+  
+  //record a connection made or broken by a move
+  private void record(int entry) {
+    if (journalSize == journal.length) {
+      journal = Arrays.copyOf(journal, 2 * journal.length);
+    }
+    journal[journalSize++] = entry;
+  }
+  
+  //return the chip object of a color for a square
+  private ConnectedChip chip(int sq, int color) {
+    ConnectedChip chip = chipPool[color][sq];
+    if (chip == null) {
+      chip = new ConnectedChip(Squares.x(sq), Squares.y(sq), color);
+      chipPool[color][sq] = chip;
+    }
+    return chip;
   }
   
   // check whether the move is legal for a certain player
+  // all rules are checked on the bitboards, the connections are not touched
   public boolean isValidMove(int color, Move m) {
     if (m == null) {
       return false;
     }
+    if (m.moveKind == Move.QUIT) {
+      return true;
+    }
+    if (!Squares.onBoard(m.x1, m.y1)) {
+      return false;
+    }
     int oppositeColor = color==BLACK? WHITE:BLACK;
+    int to = Squares.square(m.x1, m.y1);
+    if (!isEmpty(m.x1, m.y1) || isGoalArea(m.x1, m.y1, oppositeColor)!=0) {
+      return false;
+    }
     switch(m.moveKind) {
     case Move.ADD:
-      return isEmpty(m.x1, m.y1) && isGoalArea(m.x1, m.y1, oppositeColor)==0;
+      //add moves are only allowed until all ten chips are on the board
+      return chipsNum(color) < 10 && (clusterMask(color, -1) & Squares.bit(to)) == 0;
     case Move.STEP:
-      return board[m.x2][m.y2] == color && isEmpty(m.x1, m.y1) 
-      && isGoalArea(m.x1, m.y1, oppositeColor)==0;
-    case Move.QUIT:
-      return true;
+      //step moves are only allowed when all ten chips are on the board
+      return chipsNum(color) == 10 && Squares.onBoard(m.x2, m.y2) 
+          && colorAt(m.x2, m.y2) == color
+          && (clusterMask(color, Squares.square(m.x2, m.y2)) & Squares.bit(to)) == 0;
     }
     return false;
   }
   
+  //return the squares where a chip of a color would form a connected group
+  //of three or more chips: squares next to two chips of the color, and
+  //squares next to a chip that already has a neighbour of its color
+  //vacated is the old square of a step move, or -1 for an add move
+  private long clusterMask(int color, int vacated) {
+    long own = pieces[color];
+    if (vacated >= 0) {
+      own &= ~Squares.bit(vacated);
+    }
+    long once = 0;
+    long twice = 0;
+    long paired = 0;
+    for (long chips = own; chips != 0; chips &= chips - 1) {
+      int sq = Long.numberOfTrailingZeros(chips);
+      long neighbours = Squares.NEIGHBOURS[sq];
+      twice |= once & neighbours;
+      once |= neighbours;
+      if ((neighbours & own) != 0) {
+        paired |= Squares.bit(sq);
+      }
+    }
+    return twice | Squares.neighbours(paired);
+  }
+  
   //indicate whether a position on the board is empty
   public boolean isEmpty(int x, int y) {
-    return board[x][y] == EMPTY;
+    return ((occupied | Squares.DEAD) & Squares.bit(x, y)) == 0;
+  }
+  
+  //return the content of a position: BLACK, WHITE, EMPTY or DEAD
+  public int colorAt(int x, int y) {
+    long bit = Squares.bit(x, y);
+    if ((pieces[BLACK] & bit) != 0) {
+      return BLACK;
+    } else if ((pieces[WHITE] & bit) != 0) {
+      return WHITE;
+    } else if ((Squares.DEAD & bit) != 0) {
+      return DEAD;
+    }
+    return EMPTY;
+  }
+  
+  //return the number of chips of a color on the board
+  public int chipsNum(int color) {
+    return Long.bitCount(pieces[color]);
+  }
+  
+  //place a chip on the bitboards
+  private void putChip(int sq, int color) {
+    pieces[color] |= Squares.bit(sq);
+    occupied |= Squares.bit(sq);
+    for (int s = 0; s < Squares.SYMMETRIES; s++) {
+      zobrist[s] ^= ZOBRIST[color][Squares.SYMMETRY[s][sq]];
+    }
+  }
+  
+  //remove a chip from the bitboards
+  private void clearChip(int sq, int color) {
+    pieces[color] &= ~Squares.bit(sq);
+    occupied &= ~Squares.bit(sq);
+    for (int s = 0; s < Squares.SYMMETRIES; s++) {
+      zobrist[s] ^= ZOBRIST[color][Squares.SYMMETRY[s][sq]];
+    }
+  }
+  
+  //return the Zobrist key of the chips on the board
+  public long zobristKey() {
+    return zobrist[0];
+  }
+  
+  //return the Zobrist key of the position with the given color to move
+  public long zobristKey(int toMove) {
+    return zobristKey(toMove, 0);
+  }
+  
+  //return the Zobrist key of the position mapped by a symmetry
+  //with the given color to move
+  public long zobristKey(int toMove, int symmetry) {
+    return toMove == WHITE? zobrist[symmetry] ^ ZOBRIST_WHITE_TO_MOVE : zobrist[symmetry];
+  }
+  
+  //return the symmetry that maps the position to its canonical form,
+  //the symmetric position with the smallest key
+  //mirrored positions have the same canonical form and the same canonical key
+  public int canonicalSymmetry() {
+    int best = 0;
+    for (int s = 1; s < Squares.SYMMETRIES; s++) {
+      if (zobrist[s] < zobrist[best]) {
+        best = s;
+      }
+    }
+    return best;
+  }
+  
+  //return the Zobrist key of the canonical form with the given color to move
+  public long canonicalKey(int toMove) {
+    return zobristKey(toMove, canonicalSymmetry());
   }
   
   //indicate whether a position is in dead area
   //areas that is out of the boarder is also thought to be dead area
   public boolean isDeadArea(int x, int y) {
-    if ((x == 0 || x == SIZE-1) && (y == 0 || y == SIZE-1)) { //dead area
-      return true;
-    } else if (x < 0 || x >= SIZE || y < 0 || y >= SIZE) { //out of the boarder
+    if (!Squares.onBoard(x, y)) { //out of the boarder
       return true;
-    } else {
-      return false;
     }
+    return (Squares.DEAD & Squares.bit(x, y)) != 0;
   }
   
   //indicate whether a position on the board is in goal area
@@ -136,10 +461,11 @@ public class Board {
   //return 1 if in up or left goal area
   //return -1 if in down or right goal area
   public int isGoalArea(int x, int y, int color) {
-    if (color == BLACK && (y==0 || y==SIZE-1) && x!=0 && x!=SIZE-1) {
-      return y==0? 1:-1;
-    } else if (color == WHITE && (x==0 || x==SIZE-1) && y!=0 && y!=SIZE-1) {
-      return x==0? 1:-1;
+    long bit = Squares.bit(x, y);
+    if ((Squares.FIRST_GOAL[color] & bit) != 0) {
+      return 1;
+    } else if ((Squares.LAST_GOAL[color] & bit) != 0) {
+      return -1;
     } else {
       return 0;
     }
@@ -147,12 +473,21 @@ public class Board {
   
   //return the number of connected chips for a color
   public int connectedChipsNum(int color) {
-    LinkedList<ConnectedChip> chips = (color==BLACK? this.blackChips:this.whiteChips);
-    int count = 0;
-    for (ConnectedChip c : chips) {
-      count += c.connectionsNum();
-    }
-    return count;
+    return connections[color];
+  }
+  
+  //connect two chips of the same color
+  void connect(ConnectedChip c1, ConnectedChip c2) {
+    c1.addConnectedChip(c2);
+    c2.addConnectedChip(c1);
+    connections[c1.color] += 2;
+  }
+  
+  //break the connection of two chips of the same color
+  void disconnect(ConnectedChip c1, ConnectedChip c2) {
+    c1.removeConnection(c2);
+    c2.removeConnection(c1);
+    connections[c1.color] -= 2;
   }
   
   //find the number of adjacent chips 
@@ -170,271 +505,298 @@ public class Board {
   }
   
   //check whether two chips are connected
+  //they are if they are on a common line with no chip between them
   public boolean isConnectedChips(Chip c1, Chip c2) {
-    if (c1.x == c2.x) {
-      int y = Math.min(c1.y, c2.y) + 1;
-      for (; y < Math.max(c1.y, c2.y); y++) {
-        if (board[c1.x][y] != EMPTY) {
-          return false;
-        }
-      }
-      return true;
-    } else if (c1.y == c2.y) {
-      int x = Math.min(c1.x, c2.x) + 1;
-      for (; x < Math.max(c1.x, c2.x); x++) {
-        if (board[x][c1.y] != EMPTY) {
-          return false;
-        }
-      }
-      return true;
-    } else if (Math.abs(c1.y-c2.y) == Math.abs(c1.x-c2.x)) {
-      int j = (c2.y-c1.y>0? 1:-1);
-      int i = (c2.x-c1.x>0? 1:-1);
-      int x = c1.x + i, y = c1.y + j;
-      //fix bug: x < c2.x is a wrong condition
-      while (x != c2.x) {
-        if (board[x][y] != EMPTY) {
-          return false;
-        }
-        x += i;
-        y += j;
-      }
-      return true;
-    }
-    return false;
+    int sq1 = Squares.square(c1.x, c1.y);
+    int sq2 = Squares.square(c2.x, c2.y);
+    return Squares.aligned(sq1, sq2) && (Squares.BETWEEN[sq1][sq2] & occupied) == 0;
   }
   
-  //Check whether a connection between chip1 and chip2 is broken after a new chip3 is added.
-  private boolean connectionBroken(Chip c1, Chip c2, Chip c3) {
-    if (c1.x == c2.x) {
-      return c3.x==c1.x && c3.y>Math.min(c1.y, c2.y) && c3.y<Math.max(c1.y, c2.y);
-    } else if (c1.y == c2.y) {
-      return c3.y==c1.y && c3.x>Math.min(c1.x, c2.x) && c3.x<Math.max(c1.x, c2.x);
-    } else if (c3.x == c1.x || c3.x == c2.x) {
-      return false;
-    } else {
-      //fix bug: when the slop is smaller than 1
-      return (c3.y-c1.y)*(c2.x-c1.x) ==  (c3.x-c1.x)*(c2.y-c1.y) //(c3.y-c1.y)/(c3.x-c1.x) == (c2.y-c1.y)/(c2.x-c1.x) 
-          && (c3.y-c1.y)*(c3.x-c2.x) == -(c3.y-c2.y)*(c3.x-c1.x);
-    }
-  }
-  
-  //After an add-kind move, some connections may be broken
-  //Fix bug: both black chips and white chips can be affected
-  private void checkConnections(Chip addedChip) {
-    LinkedList<MoveEffect> meList = new LinkedList<>();
-    for (ConnectedChip chip : this.allChips) {
-      if (chip == addedChip) {
-        continue;
-      }
-      for (ConnectedChip c: chip.connectedChips) {
-        if (c!=addedChip && connectionBroken(chip, c, addedChip)) {
-          //System.out.println("Unconnected: " + chip.toString() + c.toString() +" because of " + addedChip.toString());
-          chip.removeConnection(c);
-          c.removeConnection(chip);
-          meList.add(new MoveEffect(chip, c, false));
-          break;
-        }
+  //A chip added to a square breaks the connection of the chips around it:
+  //the first chips on two opposite rays of the square are connected before
+  //the add if they have the same color
+  private void breakConnections(int sq) {
+    for (int d = 0; d < 4; d++) {
+      int a = nextChip(sq, d);
+      int b = nextChip(sq, d + 4);
+      if (a >= 0 && b >= 0 && chipAt[a].color == chipAt[b].color) {
+        disconnect(chipAt[a], chipAt[b]);
+        record(a | b << 6);
       }
     }
-    this.moveEffects.push(meList);
   }
   
-  //After a step-kind move, some connections may be broken and some may be added
-  //Fix bug: both black chips and white chips can be affected
-  private void updateConnections(Chip addedChip) {
-    LinkedList<MoveEffect> meList = new LinkedList<>();
-    for (ConnectedChip chip : this.allChips) {
-      if (chip == addedChip) {
-        continue;
-      }
-      for (ConnectedChip otherChip: this.allChips) {
-        if (otherChip == addedChip) {
-          continue;
-        }
-        if (otherChip != chip) {
-          if (chip.isConnectedWith(otherChip)) {
-            if (connectionBroken(chip, otherChip, addedChip)) {
-              chip.removeConnection(otherChip);
-              otherChip.removeConnection(chip);
-              meList.add(new MoveEffect(chip, otherChip, false));
-            }
-          } else if (isConnectedChips(chip, otherChip)) {
-            chip.addConnectedChip(otherChip);
-            otherChip.addConnectedChip(chip);
-            meList.add(new MoveEffect(chip, otherChip, true));
-          }
-        }
+  //A chip moved away from a square connects the chips of the same color
+  //that are the first chips on two opposite rays of the square
+  private void makeConnections(int sq) {
+    for (int d = 0; d < 4; d++) {
+      int a = nextChip(sq, d);
+      int b = nextChip(sq, d + 4);
+      if (a >= 0 && b >= 0 && chipAt[a].color == chipAt[b].color) {
+        connect(chipAt[a], chipAt[b]);
+        record(a | b << 6 | MADE);
       }
     }
-    this.moveEffects.push(meList);
   }
   
-  private void restoreConnections() {
-    LinkedList<MoveEffect> meList = this.moveEffects.pop();
-    if (meList != null && !meList.isEmpty()) {
-      for (MoveEffect me: meList) {
-        me.restoreMoveEffect();
+  //undo the journal entries of a move, latest first
+  private void restoreConnections(int frame) {
+    while (journalSize > frame) {
+      int entry = journal[--journalSize];
+      ConnectedChip a = chipAt[entry & 63];
+      ConnectedChip b = chipAt[(entry >>> 6) & 63];
+      if ((entry & MADE) != 0) {
+        disconnect(a, b);
+      } else {
+        connect(a, b);
       }
     }
   }
   
   //add a new chip to the board
+  //the chip must already be on the bitboards, and the connections through
+  //its square must already be broken, a chip connects once in each direction
   //update connections of the new chip
   //return false if one chip have two neighbours after adding the chip
   public boolean addChip(ConnectedChip chip) {
-    LinkedList<ConnectedChip> chips = (chip.color == BLACK? this.blackChips:this.whiteChips);
-    for  (ConnectedChip otherChip : chips) {
-      if (isConnectedChips(chip, otherChip)) {
+    int sq = Squares.square(chip.x, chip.y);
+    for (int d = 0; d < 8; d++) {
+      //a chip is connected to the first chip in each direction if it has the same color
+      int next = nextChip(sq, d);
+      ConnectedChip otherChip = next >= 0? chipAt[next] : null;
+      if (otherChip != null && otherChip.color == chip.color) {
         if (!otherChip.addConnectedChip(chip) || !chip.addConnectedChip(otherChip)) {
           //the chip will have two neighbours after connection
           return false;
         }
+        connections[chip.color] += 2;
       }
     }
-    if (isGoalArea(chip.x, chip.y, chip.color)!=0) {
-      chips.addFirst(chip);;
-    } else {
-      chips.add(chip);
-    }
-    allChips.add(chip);
+    chipAt[sq] = chip;
     return true;
   }
   
+  //remove a chip and its connections from the board
   public void removeChip(Chip chip) {
-    LinkedList<ConnectedChip> chips = (chip.color == BLACK? this.blackChips:this.whiteChips);
-    //System.out.println("removeChip: " + chip.x + ","+chip.y+","+ chip.color);
-    ListIterator<ConnectedChip> ite = chips.listIterator();
-    while (ite.hasNext()) {
-      ConnectedChip c = ite.next();
-      //c.print();
-      if (c.equals(chip)) {
-        //System.out.println("find and remove");
-        ite.remove();
-        allChips.remove(c);
-      } else {
-        c.removeConnectedChip(chip);
-        //c.print();
+    int sq = Squares.square(chip.x, chip.y);
+    ConnectedChip c = chipAt[sq];
+    for (int d = 0; d < 8; d++) {
+      ConnectedChip otherChip = c.connectedChip(d);
+      if (otherChip != null) {
+        otherChip.removeConnection(c);
+        connections[c.color] -= 2;
       }
     }
+    c.clearConnections();
+    chipAt[sq] = null;
   }
   
   //check whether a player wins
+  //a network is searched on the bitboards: a chip is connected to the first
+  //chip on each of its eight rays if that chip has the same color
   public boolean success(int color) {
-    LinkedList<ConnectedChip> chips = color==BLACK?blackChips:whiteChips;
-    if (chips.size() < 6) {
+    long own = pieces[color];
+    //a network needs six chips and a chip in each of the two goal areas
+    if (Long.bitCount(own) < 6 || (own & Squares.FIRST_GOAL[color]) == 0 
+        || (own & Squares.LAST_GOAL[color]) == 0) {
       return false;
     }
-    for (ConnectedChip c : chips) {
-      if (isGoalArea(c.x, c.y, color) == 1) {
-        LinkedList<ConnectedChip> network = new LinkedList<ConnectedChip>();
-        network.add(c);
-        if (formNetwork(c, network)) {
-          return true;
-        }
-        network.clear();
+    long enemy = pieces[color==BLACK? WHITE:BLACK];
+    if (own == noNetworkOwn[color] 
+        && ((enemy ^ noNetworkEnemy[color]) & noNetworkBlockers[color]) == 0) {
+      //the connections are the same as when no network was found last time
+      return false;
+    }
+    for (long starts = own & Squares.FIRST_GOAL[color]; starts != 0; starts &= starts - 1) {
+      int sq = Long.numberOfTrailingZeros(starts);
+      if (formNetwork(color, sq, -1, Squares.bit(sq), 1)) {
+        return true;
       }
     }
+    noNetworkOwn[color] = own;
+    noNetworkEnemy[color] = enemy;
+    noNetworkBlockers[color] = blockers(own);
     return false;
   }
   
-  //the network starts from a up or left goal area and ends in the other goal area
-  //return true if a valid network can be formed, otherwise false
-  private boolean formNetwork(ConnectedChip start, LinkedList<ConnectedChip> network) {
-    LinkedList<ConnectedChip> neighbours = start.connectedChips;
-    for (Chip c : neighbours) {
-      if (isGoalArea(c.x, c.y, c.color) == -1) {
-        network.add((ConnectedChip) c);
-//        System.out.print("Network: ");
-//        for (Chip a:network) {
-//          System.out.print(a.x + "," + a.y +";");
-//        }
-//        System.out.println();
-        if (isValidNetwork(network)) {
+  //return the squares where a chip could break or make a connection
+  //between two of the given chips
+  private long blockers(long chips) {
+    long squares = 0;
+    for (long a = chips; a != 0; a &= a - 1) {
+      long[] between = Squares.BETWEEN[Long.numberOfTrailingZeros(a)];
+      for (long b = a & (a - 1); b != 0; b &= b - 1) {
+        squares |= between[Long.numberOfTrailingZeros(b)];
+      }
+    }
+    return squares;
+  }
+  
+  //return the first occupied square from a square in a direction, or -1
+  private int nextChip(int sq, int direction) {
+    long chips = Squares.RAYS[sq][direction] & occupied;
+    if (chips == 0) {
+      return -1;
+    }
+    //directions 0 to 3 go to higher squares, 4 to 7 to lower squares
+    return direction < 4? Long.numberOfTrailingZeros(chips) : 63 - Long.numberOfLeadingZeros(chips);
+  }
+  
+  //extend a network that starts in the up or left goal area and ends at sq
+  //direction is the direction of the last connection, or -1 at the start
+  //visited holds the chips of the network, length is their number
+  //return true if the network can be extended to the other goal area
+  private boolean formNetwork(int color, int sq, int direction, long visited, int length) {
+    long own = pieces[color];
+    long goal = Squares.GOAL[color];
+    //the chips not in a goal area are all that can still be passed
+    if (length + Long.bitCount(own & ~visited & ~goal) + 1 < 6) {
+      return false;
+    }
+    for (int d = 0; d < 8; d++) {
+      //a network cannot pass through a chip without turning a corner
+      if (d == direction) {
+        continue;
+      }
+      int next = nextChip(sq, d);
+      if (next < 0 || (own & Squares.bit(next)) == 0 || (visited & Squares.bit(next)) != 0) {
+        continue;
+      }
+      if ((Squares.LAST_GOAL[color] & Squares.bit(next)) != 0) {
+        if (length + 1 >= 6) {
           return true;
-        } else {
-          network.removeLast();
         }
-      } else if (isGoalArea(c.x, c.y, c.color)!=1 && !network.contains((ConnectedChip) c)) {
+      } else if ((goal & Squares.bit(next)) == 0 
+          && formNetwork(color, next, d, visited | Squares.bit(next), length + 1)) {
         //only head and end of the network can be in the goal area
-        //not allowed to pass a chip more than once
-        network.add((ConnectedChip) c);
-        if (formNetwork((ConnectedChip) c, network)) {
-          return true;
-        }
-        network.removeLast();
+        return true;
       }
     }
     return false;
   }
   
-  //check whether a network is valid
-  private boolean isValidNetwork(LinkedList<ConnectedChip> network) {
-    if (network.size() < 6) {
+  //check whether a packed move completes a network of the color
+  //a move that also completes a network of the opponent does not win,
+  //by the rules of the game the opponent wins
+  //the move may come from another position, a move to an occupied square
+  //or from a square without a chip of the color does not win
+  public boolean isWinningMove(int m, int color) {
+    if ((occupied & Squares.bit(PackedMove.to(m))) != 0 || (PackedMove.kind(m) == Move.STEP 
+        && (pieces[color] & Squares.bit(PackedMove.from(m))) == 0)) {
       return false;
     }
-    ListIterator<ConnectedChip> ite = network.listIterator();
-    double slope1, slope2;
-    Chip c1 = ite.next();
-    Chip c2 = ite.next();
-    if (c2.x == c1.x) {
-      slope1 = 100; //infinite
-    } else {
-      slope1 = (double)(c2.y - c1.y)/(double)(c2.x - c1.x);
+    boolean win = move(m, color) && success(color) && !success(color==BLACK? WHITE:BLACK);
+    retractMove(m);
+    return win;
+  }
+  
+  //write the moves of the color that complete its network into a buffer
+  //of at least MAX_MOVES entries, return the number of moves
+  //only moves that can take part in a network are tried
+  public int winningMoves(int color, int[] moves) {
+    long own = pieces[color];
+    boolean add = Long.bitCount(own) < 10;
+    //a network needs six chips
+    if (add && Long.bitCount(own) + 1 < 6) {
+      return 0;
     }
-    while (ite.hasNext()) {
-      Chip c3 = ite.next();
-      if (c3.x == c2.x) {
-        slope2 = 100; //infinite
-      } else {
-        slope2 = (double)(c3.y - c2.y)/(double)(c3.x - c2.x);
+    int count = 0;
+    if (add) {
+      //the new chip has to be in the network, so it has to see a chip of
+      //the color, and it has to be in a goal area that has no chip yet
+      long targets = lineOfSight(color);
+      if ((own & Squares.FIRST_GOAL[color]) == 0) {
+        targets &= Squares.FIRST_GOAL[color];
       }
-      if (slope1 == slope2) {
-        return false;
+      if ((own & Squares.LAST_GOAL[color]) == 0) {
+        targets &= Squares.LAST_GOAL[color];
+      }
+      if (targets == 0) {
+        return 0;
+      }
+      count = movesGenerator(color, moves);
+      int wins = 0;
+      for (int i = 0; i < count; i++) {
+        if ((targets & Squares.bit(PackedMove.to(moves[i]))) != 0 && isWinningMove(moves[i], color)) {
+          moves[wins++] = moves[i];
+        }
       }
-      slope1 = slope2;
-      c1 = c2;
-      c2 = c3;
+      return wins;
     }
-    return true;
+    //a step can also open a line between two other chips, so every step
+    //that leaves a chip in both goal areas is tried
+    count = movesGenerator(color, moves);
+    int wins = 0;
+    for (int i = 0; i < count; i++) {
+      long after = own & ~Squares.bit(PackedMove.from(moves[i])) | Squares.bit(PackedMove.to(moves[i]));
+      if ((after & Squares.FIRST_GOAL[color]) != 0 && (after & Squares.LAST_GOAL[color]) != 0
+          && isWinningMove(moves[i], color)) {
+        moves[wins++] = moves[i];
+      }
+    }
+    return wins;
   }
   
+  //return the empty squares from which a chip would see a chip of the color
+  //along one of the eight rays
+  private long lineOfSight(int color) {
+    long squares = 0;
+    for (long chips = pieces[color]; chips != 0; chips &= chips - 1) {
+      int sq = Long.numberOfTrailingZeros(chips);
+      for (int d = 0; d < 8; d++) {
+        long ray = Squares.RAYS[sq][d];
+        int next = nextChip(sq, d);
+        if (next >= 0) {
+          //the squares beyond the first chip are hidden by it
+          ray &= ~Squares.RAYS[next][d] & ~Squares.bit(next);
+        }
+        squares |= ray;
+      }
+    }
+    return squares & ~occupied;
+  }
   
   // generating a list of all valid moves
   public List<Move> movesGenerator(int color) {
-    LinkedList<ConnectedChip> chips = color==BLACK? blackChips:whiteChips;
-    int opposite = color==BLACK? WHITE:BLACK;
+    int[] packed = new int[MAX_MOVES];
+    int count = movesGenerator(color, packed);
     List<Move> moves = new LinkedList<>();
-    if (chips.size() < 10) {
+    for (int i = 0; i < count; i++) {
+      moves.add(PackedMove.decode(packed[i]));
+    }
+    return moves;
+  }
+  
+  // generating all valid moves packed by PackedMove into a buffer
+  // of at least MAX_MOVES entries, without allocating
+  // return the number of moves
+  public int movesGenerator(int color, int[] moves) {
+    int opposite = color==BLACK? WHITE:BLACK;
+    int count = 0;
+    //squares that would form a group of three are left out,
+    //so all generated moves are legal
+    long free = ~(occupied | Squares.DEAD | Squares.GOAL[opposite]);
+    if (Long.bitCount(pieces[color]) < 10) {
       //move kind is add
-      for (int i = 0; i < SIZE; i++) {
-        for (int j = 0; j < SIZE; j++) {
-          //modify: don't check adjacent chips here
-          //instead, check that after the move is made
-          if (this.board[i][j]==EMPTY && isGoalArea(i,j,opposite)==0) {
-            moves.add(new Move(i, j));
-          }
-        }
+      for (long targets = free & ~clusterMask(color, -1); targets != 0; targets &= targets - 1) {
+        moves[count++] = PackedMove.add(Long.numberOfTrailingZeros(targets));
       }
     } else {
       //move kind is step
-      for (int i = 0; i < SIZE; i++) {
-        for (int j = 0; j < SIZE; j++) {
-          if (this.board[i][j]==EMPTY && isGoalArea(i,j,opposite)==0) {
-            for (Chip c : chips) {
-              moves.add(new Move(i, j, c.x, c.y));
-            }
-          }
+      for (long chips = pieces[color]; chips != 0; chips &= chips - 1) {
+        int from = Long.numberOfTrailingZeros(chips);
+        for (long targets = free & ~clusterMask(color, from); targets != 0; targets &= targets - 1) {
+          moves[count++] = PackedMove.step(Long.numberOfTrailingZeros(targets), from);
         }
       }
     }
-    return moves;
+    return count;
   }
   
   public void print() {
     for (int j = 0; j < SIZE; j++) {
       for (int i = 0; i < SIZE; i++) {
-        switch(board[i][j]) {
+        switch(colorAt(i, j)) {
         case BLACK:
           System.out.print("X");
           break;
@@ -448,42 +810,12 @@ public class Board {
       System.out.println();
     }
     System.out.println("Black Chips: ");
-    for (ConnectedChip c : this.blackChips) {
-      c.print();
+    for (long chips = pieces[BLACK]; chips != 0; chips &= chips - 1) {
+      chipAt[Long.numberOfTrailingZeros(chips)].print();
     }
     System.out.println("White Chips: ");
-    for (ConnectedChip c : this.whiteChips) {
-      c.print();
+    for (long chips = pieces[WHITE]; chips != 0; chips &= chips - 1) {
+      chipAt[Long.numberOfTrailingZeros(chips)].print();
     }
   }
 }
-
-class MoveEffect {
-  //used to save the effect of a move on the connection of two chips
-  
-  public ConnectedChip chip1;
-  public ConnectedChip chip2;
-  //indicate the change of the connection between chip1 and chip2 
-  //true if a new connection is created
-  //false if an old connection is broken
-  public boolean makeConnection;
-  
-  public MoveEffect(ConnectedChip c1, ConnectedChip c2, boolean mc) {
-    chip1 = c1;
-    chip2 = c2;
-    makeConnection = mc;
-  }
-  
-  public void restoreMoveEffect() {
-    if (makeConnection) {
-      //need to remove the new created connection
-      chip1.removeConnection(chip2);
-      chip2.removeConnection(chip1);
-    } else {
-      //need to add the removed connection
-      chip1.addConnectedChip(chip2);
-      chip2.addConnectedChip(chip1);
-    }
-  }
-}
-
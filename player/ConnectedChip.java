@@ -1,21 +1,25 @@
 package player;
 
-import java.util.LinkedList;
-import java.util.ListIterator;
-
 public class ConnectedChip extends Chip {
   
-  //a list of all connected chips
-  protected LinkedList<ConnectedChip> connectedChips;
+  //connected chips indexed by their direction from this chip, see Squares,
+  //a chip has at most one connection in each of the eight directions
+  protected ConnectedChip[] connectedChips;
+  //squares of the connected chips
+  protected long connectedMask;
   //its neighbor chip
   //a chip can have no more than one neighbour chip
   protected ConnectedChip neighbourChip;
   
+  private final int square;
+  
   //constructor
   public ConnectedChip(int x, int y, int color) {
     super(x, y, color);
-    connectedChips = new LinkedList<>();
+    connectedChips = new ConnectedChip[8];
+    connectedMask = 0;
     neighbourChip = null;
+    square = Squares.square(x, y);
   }
   
   //check whether it equals to another chip
@@ -25,7 +29,12 @@ public class ConnectedChip extends Chip {
   
   //return the number of its connected chips
   public int connectionsNum() {
-    return connectedChips.size();
+    return Long.bitCount(connectedMask);
+  }
+  
+  //return the connected chip in a direction, or null
+  public ConnectedChip connectedChip(int direction) {
+    return connectedChips[direction];
   }
   
   //return list of its neighbour chips
@@ -35,7 +44,7 @@ public class ConnectedChip extends Chip {
   
   //check whether it is connected with another chip
   public boolean isConnectedWith(ConnectedChip c) {
-    return this.connectedChips.contains(c);
+    return (this.connectedMask & Squares.bit(c.square)) != 0;
   }
   
   //connect this chip with another chip
@@ -47,41 +56,49 @@ public class ConnectedChip extends Chip {
       }
       this.neighbourChip = chip;
     }
-    //fix bug: add to the connectedChips list <at the end>
-    this.connectedChips.add(chip);
+    this.connectedChips[Squares.DIRECTION[this.square][chip.square]] = chip;
+    this.connectedMask |= Squares.bit(chip.square);
     return true;
   }
   
-  //remove a chip from the list of its connected chips
+  //remove a chip from its connected chips
   public boolean removeConnectedChip(Chip chip) {
-    ListIterator<ConnectedChip> ite = connectedChips.listIterator();
-    while (ite.hasNext()) {
-      Chip c = ite.next();
-      if (c.equals(chip)) {
-        ite.remove();
-        if (c == neighbourChip) {
-          neighbourChip = null;
-        }
-        return true;
-      }
+    int sq = Squares.square(chip.x, chip.y);
+    if ((this.connectedMask & Squares.bit(sq)) == 0) {
+      return false;
     }
-    return false;
+    removeConnection(this.connectedChips[Squares.DIRECTION[this.square][sq]]);
+    return true;
   }
   
   public void removeConnection(ConnectedChip c) {
-    this.connectedChips.remove(c);
+    if (!isConnectedWith(c)) {
+      return;
+    }
+    this.connectedChips[Squares.DIRECTION[this.square][c.square]] = null;
+    this.connectedMask &= ~Squares.bit(c.square);
     if (c == neighbourChip) {
       neighbourChip = null;
     }
   }
   
+  //forget all connections, before the chip is taken off the board
+  public void clearConnections() {
+    for (int d = 0; d < 8; d++) {
+      this.connectedChips[d] = null;
+    }
+    this.connectedMask = 0;
+    this.neighbourChip = null;
+  }
+  
   public void print() {
     System.out.print("(" + x + ", " + y +") connections: ");
-    for (Chip c : connectedChips) {
-      System.out.print(c.x + "," + c.y + ";");
+    for (ConnectedChip c : connectedChips) {
+      if (c != null) {
+        System.out.print(c.x + "," + c.y + ";");
+      }
     }
     System.out.println();
   }
 
 }
-
@@ -0,0 +1,34 @@
+package player;
+
+/**
+ *  Difficulty levels of the machine player.  A level bounds the work of a
+ *  move by a number of positions and by a time budget, whichever runs out
+ *  first, so the cost of a move is known in advance whatever the position.
+ *  The search deepens until the budget is spent and plays the best move of
+ *  the last completed depth.  The lower levels play a random move among
+ *  the moves whose score is within a margin of the best score.
+ */
+public enum Difficulty {
+
+  BEGINNER(2, 1000, 100, 3),
+  EASY(3, 10000, 250, 2),
+  MEDIUM(4, 100000, 500, 1),
+  HARD(6, 1000000, 1000, 0),
+  EXPERT(12, 10000000, 3000, 0);
+
+  //deepest search
+  public final int searchDepth;
+  //positions searched for a move
+  public final long nodeLimit;
+  //time budget of a move in milliseconds
+  public final long timeLimit;
+  //moves that score at most this much below the best move may be played
+  public final int randomMargin;
+
+  Difficulty(int searchDepth, long nodeLimit, long timeLimit, int randomMargin) {
+    this.searchDepth = searchDepth;
+    this.nodeLimit = nodeLimit;
+    this.timeLimit = timeLimit;
+    this.randomMargin = randomMargin;
+  }
+}
@@ -2,7 +2,13 @@
 
 package player;
 
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  *  An implementation of an automatic Network player.  Keeps track of moves
@@ -13,21 +19,96 @@ public class MachinePlayer extends Player {
   private int machineColor;
   private int humanColor;
   private int searchDepth;
+  //time budget of a move in milliseconds, 0 searches to searchDepth only
+  private long timeLimit;
+  //budget of positions of a move, 0 for none
+  private long nodeLimit;
+  //positions counted against the budget by all threads of the running search
+  private final AtomicLong budgetNodes = new AtomicLong();
+  //play a random move among the moves that score at most this much below the best
+  private int randomMargin;
+  private Random random = new Random();
+  //scores of the root moves of the running root search
+  private final Map<Move, Integer> rootScores = new LinkedHashMap<>();
+  //moves within the random margin of the best move of the last completed iteration
+  private List<Move> nearBestMoves = Collections.emptyList();
   private Board currentBoard;
+  //results of earlier searches, kept between moves
+  private TranspositionTable table;
+  //number of positions visited by the last search
+  private long nodes;
+  //deepest search iteration completed by the last search
+  private int completedDepth;
+  //order moves by killer moves and the history table after the hash move
+  private boolean moveOrdering = true;
+  //search with principal variation search instead of minimax
+  private boolean pvs;
+  //half width of the aspiration window of iterative deepening, 0 for none
+  private int aspirationWindow;
+  //searches on currentBoard
+  private SearchWorker mainWorker;
+  //number of threads searching root moves, 1 searches on the calling thread only
+  private int parallelism;
+  private ForkJoinPool pool;
+  //workers of the parallel root search, one per thread of the pool, so the
+  //killer moves and the history table carry over from one root move to the next
+  private final ThreadLocal<SearchWorker> rootWorkers = new ThreadLocal<>();
+  //numbers of the running search and root search, a root worker forgets
+  //its killers when the search changes and resets its board when the root search does
+  private int searchCount;
+  private int rootSearchCount;
+  //with lazy SMP the threads of the pool are helpers that search the whole
+  //position and only share results through the table
+  private boolean lazySmp;
+  private volatile boolean helpersStopped;
+  //counters of the parallel root tasks and the helpers of the last search
+  private final SearchStats.Counters taskCounters = new SearchStats.Counters();
+  //time of each completed iteration of the last search
+  private long[] iterationNanos = new long[0];
+  private int iterations;
+  //statistics of the last search
+  private SearchStats stats;
+  //book moves of the first plies of the game, or null
+  private OpeningBook book;
+  //budget of the proof-number search before every search, 0 for none
+  private long solverNodeLimit;
+  //play wins in one move and stop threats of the opponent without a search
+  private boolean tacticalCheck = true;
+  //print the search and the board to the console
+  private boolean verbose = true;
+  //emit a flight recorder event for every search
+  private boolean flightRecorderEvents;
+  //the running search stops when it passes the deadline
+  private volatile long deadline;
+  private volatile boolean aborted;
+  //best move and score of the running root search
+  private Move rootMove;
+  private int rootScore;
+  //search the position after the predicted reply while the opponent thinks
+  private boolean pondering;
+  private Thread ponderThread;
+  private volatile boolean ponderStopped;
+  //the predicted reply of the opponent, packed
+  private int ponderMove = PackedMove.NONE;
+  //nodes visited by the last ponder search
+  private volatile long ponderNodes;
   
   public final int MACHINE_WIN = 9999;
   public final int HUMAN_WIN = -9999;
-  public final int SEARCHDEPTH = 4;
+  //static, so the constructors can pass them on to each other
+  public static final int SEARCHDEPTH = 4;
+  public static final int TABLESIZE = 1 << 18;
+  //scores beyond these bounds are wins, adjusted by the number of moves to the win
+  private final int WIN_BOUND = MACHINE_WIN - 1000;
+  //bound of all scores, it can be negated without overflow
+  private final int INFINITE_SCORE = Integer.MAX_VALUE;
 
   /**
    * Creates a machine player with the given color.
    * @param color  The chip color of the machine player
    */
   public MachinePlayer(int color) {
-    this.machineColor = color;
-    this.humanColor = color==Board.BLACK? Board.WHITE:Board.BLACK;
-    currentBoard = new Board();
-    this.searchDepth = SEARCHDEPTH;
+    this(color, SEARCHDEPTH);
   }
 
   /**
@@ -36,8 +117,85 @@ public class MachinePlayer extends Player {
    * @param searchDepth  The search depth of the DFS algorithm
    */
   public MachinePlayer(int color, int searchDepth) {
-    this(color);
+    this(color, searchDepth, 0);
+  }
+
+  /**
+   * Creates a machine player that searches with iterative deepening.
+   * Depth 1, 2, 3... are searched until the time limit passes or the
+   * maximum depth is reached, and the best move of the last completed
+   * iteration is played.
+   * @param color  The chip color of the machine player
+   * @param searchDepth  The maximum search depth
+   * @param timeLimit  The time budget of a move in milliseconds
+   */
+  public MachinePlayer(int color, int searchDepth, long timeLimit) {
+    this(color, searchDepth, timeLimit, 1);
+  }
+
+  /**
+   * Creates a machine player that splits the root moves between threads.
+   * The first root move is searched alone to get a score to beat, then
+   * the other root moves are searched in parallel on copies of the board,
+   * sharing the best score as it improves.
+   * @param color  The chip color of the machine player
+   * @param searchDepth  The maximum search depth
+   * @param timeLimit  The time budget of a move in milliseconds, 0 for none
+   * @param parallelism  The number of threads of the search
+   */
+  public MachinePlayer(int color, int searchDepth, long timeLimit, int parallelism) {
+    this(color, searchDepth, timeLimit, parallelism, TABLESIZE, ParallelSearch.ROOT_SPLIT);
+  }
+
+  /**
+   * Creates a machine player with a parallel search of the given kind and
+   * a transposition table of the given size.  With lazy SMP, helper threads
+   * search the same position as the main search at staggered depths and
+   * communicate only through the shared lock-free table.  The other
+   * constructors call this one, so the table is only allocated here.
+   * @param color  The chip color of the machine player
+   * @param searchDepth  The maximum search depth
+   * @param timeLimit  The time budget of a move in milliseconds, 0 for none
+   * @param threads  The number of searching threads, including the calling thread
+   * @param tableSize  The number of entries of the transposition table
+   * @param parallelSearch  How the search is split between the threads
+   */
+  public MachinePlayer(int color, int searchDepth, long timeLimit, int threads, int tableSize, 
+      ParallelSearch parallelSearch) {
+    this.machineColor = color;
+    this.humanColor = color==Board.BLACK? Board.WHITE:Board.BLACK;
+    currentBoard = new Board();
     this.searchDepth = searchDepth;
+    this.timeLimit = timeLimit;
+    this.table = new TranspositionTable(tableSize);
+    this.mainWorker = new SearchWorker(currentBoard);
+    this.parallelism = Math.max(threads, 1);
+    this.lazySmp = parallelSearch == ParallelSearch.LAZY_SMP;
+    if (this.parallelism > 1) {
+      //the calling thread is one of the threads of a lazy SMP search
+      this.pool = new ForkJoinPool(this.lazySmp? this.parallelism - 1 : this.parallelism);
+    }
+  }
+
+  /**
+   * Creates a machine player that plays at a difficulty level.
+   * @param color  The chip color of the machine player
+   * @param difficulty  The level of the machine player
+   */
+  public MachinePlayer(int color, Difficulty difficulty) {
+    this(color, difficulty, TABLESIZE);
+  }
+
+  /**
+   * Creates a machine player that plays at a difficulty level with a
+   * transposition table of the given size, for hosts of many games.
+   * @param color  The chip color of the machine player
+   * @param difficulty  The level of the machine player
+   * @param tableSize  The number of entries of the transposition table
+   */
+  public MachinePlayer(int color, Difficulty difficulty, int tableSize) {
+    this(color, difficulty.searchDepth, difficulty.timeLimit, 1, tableSize, ParallelSearch.ROOT_SPLIT);
+    setDifficulty(difficulty);
   }
 
   /**
@@ -45,38 +203,766 @@ public class MachinePlayer extends Player {
    * @return Move The optimal move for the machine player
    */
   public Move chooseMove() {
+    stopPondering();
+    SearchEvent event = null;
+    if (this.flightRecorderEvents) {
+      event = new SearchEvent();
+      event.begin();
+    }
+    long start = System.nanoTime();
+    this.mainWorker.counters.clear();
+    this.mainWorker.newSearch();
+    this.searchCount++;
+    this.completedDepth = 0;
+    synchronized (this) {
+      this.taskCounters.clear();
+    }
+    this.iterationNanos = new long[Math.max(this.searchDepth, 1)];
+    this.iterations = 0;
+    this.aborted = false;
+    //the time limit covers the whole move, the book, the tactical check
+    //and the proof-number search included
+    this.deadline = this.timeLimit > 0? System.currentTimeMillis() + this.timeLimit : Long.MAX_VALUE;
+    this.budgetNodes.set(0);
+    this.nearBestMoves = Collections.emptyList();
+    Move bookMove = bookMove();
+    if (bookMove != null) {
+      return playWithoutSearch(bookMove, "book move", start, event);
+    }
     List<Move> moves = this.currentBoard.movesGenerator(machineColor);
-    ListIterator<Move> ite = moves.listIterator();
-    int bestScore = Integer.MIN_VALUE;
+    if (this.tacticalCheck) {
+      Move tactical = tacticalMove(moves);
+      if (tactical != null) {
+        return playWithoutSearch(tactical, "tactical move", start, event);
+      }
+    }
+    int depth = this.searchDepth;
+    if (this.solverNodeLimit > 0) {
+      ProofNumberSearch solver = new ProofNumberSearch(currentBoard, machineColor);
+      //the tree of the solver is garbage once it returns, so it gets half
+      //of the time and leaves the rest to the search and the collector
+      long solverDeadline = this.timeLimit > 0?
+          System.currentTimeMillis() + (this.deadline - System.currentTimeMillis()) / 2 : Long.MAX_VALUE;
+      //the nodes of the solver count against the node budget of the move
+      long solverNodes = this.solverNodeLimit;
+      if (this.nodeLimit > 0) {
+        solverNodes = Math.min(solverNodes, this.nodeLimit - this.budgetNodes.get());
+      }
+      int result = solver.solve(machineColor, solverNodes, solverDeadline);
+      this.mainWorker.counters.solverNodes = solver.getNodes();
+      this.budgetNodes.addAndGet(solver.getNodes());
+      if (result == ProofNumberSearch.PROVEN) {
+        return playWithoutSearch(PackedMove.decode(solver.provingMove()), "forced win", 
+            start, event);
+      }
+      if (result == ProofNumberSearch.DISPROVEN) {
+        //every move loses, a deep search would only find the longest defence
+        depth = Math.min(depth, 2);
+      } else {
+        removeRefutedMoves(moves, solver);
+      }
+    }
+    List<ForkJoinTask<?>> helpers = startHelpers();
+    Move bestMove;
+    if (this.timeLimit > 0 || this.nodeLimit > 0) {
+      bestMove = iterativeDeepening(moves, depth);
+    } else {
+      bestMove = searchRoot(moves, depth);
+      this.completedDepth = depth;
+      this.nearBestMoves = nearBestMoves();
+      this.iterationNanos[this.iterations++] = System.nanoTime() - start;
+    }
+    stopHelpers(helpers);
+    if (this.nearBestMoves.size() > 1) {
+      bestMove = this.nearBestMoves.get(this.random.nextInt(this.nearBestMoves.size()));
+    }
+    collectStats(bestMove, System.nanoTime() - start, event);
+    if (this.verbose) {
+      System.out.println("nodes searched: " + this.nodes);
+      System.out.println("effective branching factor: " + getEffectiveBranchingFactor());
+    }
+    if (forceMove(bestMove)) {
+      startPondering();
+      return bestMove;
+    } else {
+      if (this.verbose) {
+        System.out.println("The chosed move is not valid.");
+      }
+      return null;
+    }
+  } 
+
+  /**
+   * Play a move that was found without a search
+   * @param m  The move
+   * @param reason  How the move was found, for the console
+   * @param start  The start time of chooseMove
+   * @param event  The flight recorder event of the search, or null
+   * @return the move
+   */
+  private Move playWithoutSearch(Move m, String reason, long start, SearchEvent event) {
+    collectStats(m, System.nanoTime() - start, event);
+    if (this.verbose) {
+      System.out.println(reason + ": " + m);
+    }
+    forceMove(m);
+    startPondering();
+    return m;
+  }
+
+  /**
+   * Look for a move that completes a network, and for the moves that stop
+   * the opponent from completing a network with the next move.  If the
+   * opponent threatens to win, the moves that do not stop every threat
+   * are removed, unless no move stops them all or the time runs out first.
+   * @param moves  The moves of the machine player
+   * @return a winning move or the only move that stops the threats, or
+   *  null if the position has to be searched
+   */
+  private Move tacticalMove(List<Move> moves) {
+    int[] wins = new int[Board.MAX_MOVES];
+    if (currentBoard.winningMoves(machineColor, wins) > 0) {
+      return PackedMove.decode(wins[0]);
+    }
+    int threats = currentBoard.winningMoves(humanColor, wins);
+    if (threats == 0) {
+      return null;
+    }
+    //an add move only takes squares and lines away from the opponent, so
+    //after it only the old threats can win, after a step any move can
+    boolean add = currentBoard.chipsNum(machineColor) < 10;
+    int[] buffer = new int[Board.MAX_MOVES];
+    List<Move> blocking = new ArrayList<>();
+    for (Move m : moves) {
+      if (System.currentTimeMillis() >= this.deadline) {
+        //leave the moves to the search, which always completes depth 1
+        return null;
+      }
+      int packed = PackedMove.encode(m);
+      if (currentBoard.move(packed, machineColor) && !currentBoard.success(humanColor)) {
+        boolean stopped = true;
+        if (add) {
+          for (int i = 0; i < threats && stopped; i++) {
+            stopped = !currentBoard.isWinningMove(wins[i], humanColor);
+          }
+        } else {
+          stopped = currentBoard.winningMoves(humanColor, buffer) == 0;
+        }
+        if (stopped) {
+          blocking.add(m);
+        }
+      }
+      currentBoard.retractMove(packed);
+    }
+    if (blocking.size() == 1) {
+      return blocking.get(0);
+    }
+    if (!blocking.isEmpty()) {
+      moves.retainAll(blocking);
+    }
+    return null;
+  }
+
+  /**
+   * Remove the moves after which the proof-number search proved a network
+   * of the opponent, so the search does not spend time on them
+   * @param moves  The moves of the machine player
+   * @param solver  The proof-number search of the position
+   */
+  private void removeRefutedMoves(List<Move> moves, ProofNumberSearch solver) {
+    List<Move> refuted = new ArrayList<>();
+    for (Move m : moves) {
+      if (solver.result(PackedMove.encode(m)) == ProofNumberSearch.DISPROVEN) {
+        refuted.add(m);
+      }
+    }
+    if (refuted.size() < moves.size()) {
+      moves.removeAll(refuted);
+    }
+  }
+
+  /**
+   * Look up the position in the opening book
+   * @return the book move, or null if the position is not in the book
+   */
+  private Move bookMove() {
+    if (this.book == null) {
+      return null;
+    }
+    int m;
+    try {
+      m = this.book.lookup(currentBoard, machineColor);
+    } catch (UncheckedIOException e) {
+      //play without the book rather than not at all
+      if (this.verbose) {
+        System.out.println("The opening book cannot be read: " + e.getMessage());
+      }
+      this.book = null;
+      return null;
+    }
+    if (m == PackedMove.NONE) {
+      return null;
+    }
+    Move move = PackedMove.decode(m);
+    return currentBoard.isValidMove(machineColor, move)? move : null;
+  }
+
+  /**
+   * Add up the counters of all threads of the search into a snapshot
+   * @param bestMove  The chosen move
+   * @param nanos  The time of the search
+   * @param event  The flight recorder event of the search, or null
+   */
+  private void collectStats(Move bestMove, long nanos, SearchEvent event) {
+    SearchStats.Counters total = new SearchStats.Counters();
+    total.add(this.mainWorker.counters);
+    synchronized (this) {
+      total.add(this.taskCounters);
+    }
+    this.nodes = total.nodes;
+    this.stats = new SearchStats(total, nanos, this.completedDepth, 
+        Arrays.copyOf(this.iterationNanos, this.iterations));
+    if (event == null) {
+      return;
+    }
+    event.end();
+    if (event.shouldCommit()) {
+      event.nodes = this.stats.getNodes();
+      event.nodesPerSecond = this.stats.getNodesPerSecond();
+      event.completedDepth = this.stats.getCompletedDepth();
+      event.maxDepth = this.stats.getMaxDepth();
+      event.tableHitRate = this.stats.getTableHitRate();
+      event.firstMoveCutoffRate = this.stats.getFirstMoveCutoffRate();
+      event.illegalMoves = this.stats.getIllegalMoves();
+      event.move = String.valueOf(bestMove);
+      event.commit();
+    }
+  }
+
+  /**
+   * Add the counters of a worker of a parallel search or a helper
+   */
+  private synchronized void collect(SearchWorker worker) {
+    this.taskCounters.add(worker.counters);
+    //a root worker searches more moves, which are collected again
+    worker.counters.clear();
+  }
+
+  /**
+   * Search depth 1, 2, 3... until the time limit or the node budget runs out
+   * @param moves  The moves of the machine player
+   * @param maxDepth  The deepest iteration
+   * @return the best move of the last completed iteration
+   */
+  private Move iterativeDeepening(List<Move> moves, int maxDepth) {
     Move bestMove = null;
+    long start = System.nanoTime();
+    //the first iteration never calls treeSearch, so it always completes
+    //and there is a move to play
+    for (int depth = 1; depth <= maxDepth; depth++) {
+      Move m;
+      int previous = this.rootScore;
+      if (this.pvs && this.aspirationWindow > 0 && bestMove != null) {
+        //expect a score close to the score of the last iteration
+        int lower = previous - this.aspirationWindow;
+        int upper = previous + this.aspirationWindow;
+        m = searchRoot(moves, depth, lower, upper);
+        if (m != null && (this.rootScore <= lower || this.rootScore >= upper)) {
+          //the score is outside of the window, search again with a full window
+          m = searchRoot(moves, depth);
+        }
+      } else {
+        m = searchRoot(moves, depth);
+      }
+      if (m == null) {
+        break;
+      }
+      bestMove = m;
+      this.completedDepth = depth;
+      this.nearBestMoves = nearBestMoves();
+      long now = System.nanoTime();
+      this.iterationNanos[this.iterations++] = now - start;
+      start = now;
+      //search the best move of this iteration first in the next one
+      moves.remove(m);
+      moves.add(0, m);
+      if (rootScore > WIN_BOUND || rootScore < -WIN_BOUND 
+          || System.currentTimeMillis() >= this.deadline
+          || (this.nodeLimit > 0 && this.budgetNodes.get() >= this.nodeLimit)) {
+        break;
+      }
+    }
+    return bestMove;
+  }
+
+  /**
+   * Search all moves of the machine player to the given depth
+   * @param moves  The moves of the machine player
+   * @param depth  The search depth
+   * @return the best move, or null if the search was stopped by the time limit
+   */
+  private Move searchRoot(List<Move> moves, int depth) {
+    if (this.pvs) {
+      return searchRoot(moves, depth, -INFINITE_SCORE, INFINITE_SCORE);
+    }
+    return searchRoot(moves, depth, Integer.MIN_VALUE, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Search all moves of the machine player to the given depth within a window.
+   * If the best score is not above lower, it is only an upper bound of the
+   * true score, and if it is not below upper it is only a lower bound.
+   * @param moves  The moves of the machine player
+   * @param depth  The search depth
+   * @param lower  The lower bound of the window
+   * @param upper  The upper bound of the window
+   * @return the best move, or null if the search was stopped by the time limit
+   */
+  private Move searchRoot(List<Move> moves, int depth, int lower, int upper) {
+    this.mainWorker.depthLimit = depth;
+    this.mainWorker.counters.maxDepth = Math.max(this.mainWorker.counters.maxDepth, 1);
+    //the table is keyed by the canonical form, so mirrored positions share entries
+    int symmetry = currentBoard.canonicalSymmetry();
+    long key = currentBoard.zobristKey(machineColor, symmetry);
+    orderHashMove(moves, PackedMove.transform(TranspositionTable.move(table.probe(key)), symmetry));
+    this.rootScore = Integer.MIN_VALUE;
+    this.rootMove = null;
+    this.rootScores.clear();
+    ListIterator<Move> ite = moves.listIterator();
     while (ite.hasNext()) {
       Move m = ite.next();
       if (!currentBoard.move(m, machineColor)) {
+        this.mainWorker.counters.illegalMoves++;
         currentBoard.retractMove(m);
         continue;
       }
+      this.mainWorker.counters.nodes++;
       //currentBoard.print();
       int score = boardEvaluation(currentBoard);
-      if (score!=MACHINE_WIN && score!=HUMAN_WIN && this.searchDepth > 1) {
-        score = treeSearch(humanColor, currentBoard, 2, bestScore);
-      }
-      //System.out.println("Score: " + score);
-      if (score > bestScore) {
-        bestMove = m;
-        bestScore = score;
-        System.out.println("best score: " + bestScore);
-        System.out.println(bestMove.toString());
+      if (score!=MACHINE_WIN && score!=HUMAN_WIN && depth > 1) {
+        score = mainWorker.searchRootMove(Math.max(rootAlpha(), lower), upper, 
+            this.rootMove != null);
       }
       currentBoard.retractMove(m);
+      //depth 1 always completes, even when a helper has already seen the deadline
+      if (this.aborted && depth > 1) {
+        return null;
+      }
+      //System.out.println("Score: " + score);
+      offerRootMove(m, score);
       //currentBoard.print();
+      if (score >= upper) {
+        break;
+      }
+      if (this.pool != null && !this.lazySmp && depth > 1) {
+        //the first move gives a score to beat, search the others in parallel
+        searchRootParallel(ite, depth, lower, upper);
+        if (this.aborted) {
+          return null;
+        }
+        break;
+      }
     }
-    if (forceMove(bestMove)) {
-      return bestMove;
-    } else {
-      System.out.println("The chosed move is not valid.");
-      return null;
+    //when all moves fail low, none of them is known to be the best
+    //and the hash move of the position is kept
+    if (this.rootMove != null && this.rootScore > lower) {
+      int bound = this.rootScore >= upper? TranspositionTable.LOWER:TranspositionTable.EXACT;
+      table.store(key, toTableScore(this.rootScore, 1), depth, bound, 
+          PackedMove.transform(PackedMove.encode(this.rootMove), symmetry));
     }
-  } 
+    return this.rootMove;
+  }
+
+  /**
+   * Search the remaining root moves in parallel, one task per move
+   * @param ite  The remaining moves of the machine player
+   * @param depth  The search depth
+   * @param lower  The lower bound of the window
+   * @param upper  The upper bound of the window
+   */
+  private void searchRootParallel(Iterator<Move> ite, int depth, int lower, int upper) {
+    //the tasks start from the aspiration window like the first move did
+    AtomicInteger alpha = new AtomicInteger(Math.max(rootAlpha(), lower));
+    this.rootSearchCount++;
+    final List<RootMoveTask> tasks = new ArrayList<>();
+    while (ite.hasNext()) {
+      tasks.add(new RootMoveTask(ite.next(), depth, alpha, upper));
+    }
+    pool.invoke(new RecursiveAction() {
+      protected void compute() {
+        invokeAll(tasks);
+      }
+    });
+  }
+
+  /**
+   * Return the worker of the parallel root search of the calling thread,
+   * with its board set to the root position
+   */
+  private SearchWorker rootWorker() {
+    SearchWorker worker = this.rootWorkers.get();
+    if (worker == null) {
+      worker = new SearchWorker(new Board());
+      this.rootWorkers.set(worker);
+    }
+    if (worker.searchCount != this.searchCount) {
+      worker.newSearch();
+      worker.searchCount = this.searchCount;
+    }
+    if (worker.rootSearchCount != this.rootSearchCount) {
+      //the tasks take every root move back, so the board only changes
+      //with the root search
+      worker.board.restore(currentBoard.toKey(machineColor));
+      worker.rootSearchCount = this.rootSearchCount;
+    }
+    return worker;
+  }
+
+  /**
+   * Start the helper threads of a lazy SMP search
+   * @return the running helpers
+   */
+  private List<ForkJoinTask<?>> startHelpers() {
+    List<ForkJoinTask<?>> helpers = new ArrayList<>();
+    if (this.lazySmp && this.pool != null) {
+      this.helpersStopped = false;
+      for (int i = 1; i < this.parallelism; i++) {
+        //copy the board before the main search starts changing it
+        helpers.add(pool.submit(new LazyHelper(i, currentBoard.copy())));
+      }
+    }
+    return helpers;
+  }
+
+  /**
+   * Stop the helper threads once the main search is done and wait for them
+   * @param helpers  The running helpers
+   */
+  private void stopHelpers(List<ForkJoinTask<?>> helpers) {
+    this.helpersStopped = true;
+    for (ForkJoinTask<?> helper : helpers) {
+      helper.join();
+    }
+  }
+
+  /**
+   * Record the score of a root move, keeping the first move with the best score.
+   * A move is only taken when it beats the best score, so a move whose search
+   * was cut off by the shared bound is never taken.
+   * @param m  A move of the machine player
+   * @param score  The score of the move
+   * @return the score the other moves have to beat
+   */
+  private synchronized int offerRootMove(Move m, int score) {
+    if (this.randomMargin > 0) {
+      this.rootScores.put(m, score);
+    }
+    if (score > this.rootScore) {
+      this.rootMove = m;
+      this.rootScore = score;
+      if (this.verbose) {
+        System.out.println("best score: " + score);
+        System.out.println(m.toString());
+      }
+    }
+    return rootAlpha();
+  }
+
+  /**
+   * Return the root moves whose score is within the random margin of the
+   * best score of the last root search, which has to be complete.  When the
+   * best move wins, there is no choice and the list is empty.
+   */
+  private List<Move> nearBestMoves() {
+    List<Move> nearBest = new ArrayList<>();
+    if (this.rootScore > WIN_BOUND) {
+      //a forced win is never traded for a move that only scores close to it
+      return nearBest;
+    }
+    for (Map.Entry<Move, Integer> e : this.rootScores.entrySet()) {
+      if (e.getValue() >= this.rootScore - this.randomMargin) {
+        nearBest.add(e.getKey());
+      }
+    }
+    return nearBest;
+  }
+
+  /**
+   * Return the score a root move has to beat.  With a random margin, moves
+   * close to the best move have to get exact scores as well, so the bound
+   * is lowered by the margin.
+   */
+  private synchronized int rootAlpha() {
+    if (this.rootScore == Integer.MIN_VALUE) {
+      return this.rootScore;
+    }
+    return this.rootScore - this.randomMargin - (this.randomMargin > 0? 1:0);
+  }
+
+  /**
+   * Return the number of positions visited by the last call of chooseMove.
+   * @return the node count of the last search
+   */
+  public long getNodesSearched() {
+    return this.nodes;
+  }
+
+  /**
+   * Return the effective branching factor of the last call of chooseMove,
+   * the number of positions that a tree of the same size and depth would
+   * have below every position.  Better move ordering cuts off more moves
+   * and lowers it.
+   * @return the effective branching factor of the last search
+   */
+  public double getEffectiveBranchingFactor() {
+    if (this.completedDepth == 0) {
+      return 0;
+    }
+    return Math.pow(this.nodes, 1.0 / this.completedDepth);
+  }
+
+  /**
+   * Return the statistics of the last call of chooseMove.
+   * @return a snapshot of the counters of the last search, or null before
+   *  the first search
+   */
+  public SearchStats getSearchStats() {
+    return this.stats;
+  }
+
+  /**
+   * Turn printing of the search and of the board to the console on or off.
+   * It is on by default for games on the console.
+   * @param verbose  false to print nothing
+   */
+  public void setVerbose(boolean verbose) {
+    this.verbose = verbose;
+  }
+
+  /**
+   * Play the moves of an opening book where it has the position, and
+   * search only the positions that are not in the book.
+   * @param book  The opening book, or null to always search
+   */
+  public void setOpeningBook(OpeningBook book) {
+    this.book = book;
+  }
+
+  /**
+   * Start a new game on the empty board.  The results of earlier searches
+   * and the history table are forgotten, but the table and the threads are
+   * kept, so a host of many games or a benchmark can reuse a player instead
+   * of allocating a new one for every game.
+   */
+  public void newGame() {
+    stopPondering();
+    this.ponderMove = PackedMove.NONE;
+    this.table.clear();
+    this.currentBoard.restore(new long[Board.KEY_LENGTH]);
+    this.mainWorker.newSearch();
+    this.mainWorker.clearHistory();
+  }
+
+  /**
+   * Set up a position to search, for tools that search many positions
+   * with one player and its table.
+   * @param board  The position, the machine player is to move
+   */
+  void setBoard(Board board) {
+    stopPondering();
+    this.currentBoard = board.copy();
+    this.mainWorker = new SearchWorker(currentBoard);
+  }
+
+  /**
+   * Return the score of the best move of the last completed root search.
+   */
+  int getRootScore() {
+    return this.rootScore;
+  }
+
+  /**
+   * Turn the tactical check before the search on or off.  It plays a move
+   * that completes a network at once, and if the opponent threatens to
+   * complete a network with the next move, it searches only the moves that
+   * stop every threat, or plays the only one at once.
+   * @param tacticalCheck  false to always search all moves
+   */
+  public void setTacticalCheck(boolean tacticalCheck) {
+    this.tacticalCheck = tacticalCheck;
+  }
+
+  /**
+   * Set the budget of a proof-number search before every search.  If it
+   * proves a network for the machine player, the proving move is played
+   * at once.  Moves after which it proves a network of the opponent are
+   * not searched, and if every move loses the search is kept shallow.
+   * @param solverNodeLimit  The number of nodes of the proof-number search,
+   *  0 to not run it
+   */
+  public void setSolverNodeLimit(long solverNodeLimit) {
+    this.solverNodeLimit = Math.max(solverNodeLimit, 0);
+  }
+
+  /**
+   * Play at a difficulty level.  This sets the search depth, the node
+   * budget, the time limit and the random margin of the level.
+   * @param difficulty  The level of the machine player
+   */
+  public void setDifficulty(Difficulty difficulty) {
+    this.searchDepth = difficulty.searchDepth;
+    this.nodeLimit = difficulty.nodeLimit;
+    this.timeLimit = difficulty.timeLimit;
+    this.randomMargin = difficulty.randomMargin;
+  }
+
+  /**
+   * Set the budget of positions searched for a move.  The search deepens
+   * until the budget or the time limit runs out and plays the best move of
+   * the last completed depth.  Depth 1 always completes.
+   * @param nodeLimit  The number of positions, 0 for no budget
+   */
+  public void setNodeLimit(long nodeLimit) {
+    this.nodeLimit = Math.max(nodeLimit, 0);
+  }
+
+  /**
+   * Play a random move among the moves whose score is at most the margin
+   * below the score of the best move, to make the player weaker.
+   * @param randomMargin  The margin, 0 always plays the best move
+   */
+  public void setRandomMargin(int randomMargin) {
+    this.randomMargin = Math.max(randomMargin, 0);
+  }
+
+  /**
+   * Seed the choice among moves within the random margin, to repeat games.
+   * @param seed  The seed of the random choice
+   */
+  public void setRandomSeed(long seed) {
+    this.random = new Random(seed);
+  }
+
+  /**
+   * Turn flight recorder events of the searches on or off.  They are off by
+   * default, since the first event starts up the flight recorder, and are
+   * only recorded while a recording that enables player.Search is running.
+   * @param flightRecorderEvents  true to emit an event for every search
+   */
+  public void setFlightRecorderEvents(boolean flightRecorderEvents) {
+    this.flightRecorderEvents = flightRecorderEvents;
+  }
+
+  /**
+   * Turn ordering by killer moves and the history table on or off, to
+   * compare the size of the search with and without it.  The hash move
+   * is always searched first.
+   * @param moveOrdering  true to order moves, false for generation order
+   */
+  public void setMoveOrdering(boolean moveOrdering) {
+    this.moveOrdering = moveOrdering;
+  }
+
+  /**
+   * Choose between principal variation search and minimax search.
+   * Principal variation search is a negamax alpha-beta search that searches
+   * the first move of a position with the full window and the other moves
+   * with a null window, and searches a move again only when it turns out
+   * to be better.  Both searches choose the same moves at the same depth.
+   * @param pvs  true for principal variation search, false for minimax
+   */
+  public void setPrincipalVariationSearch(boolean pvs) {
+    this.pvs = pvs;
+  }
+
+  /**
+   * Set the aspiration window of principal variation search with iterative
+   * deepening.  Every iteration after the first searches a window of the
+   * given half width around the score of the last iteration first, and
+   * searches again with a full window if the score falls outside of it.
+   * @param aspirationWindow  The half width of the window, 0 for none
+   */
+  public void setAspirationWindow(int aspirationWindow) {
+    this.aspirationWindow = Math.max(aspirationWindow, 0);
+  }
+
+  /**
+   * Turn pondering on or off.  With pondering, a background thread predicts
+   * the reply of the opponent after every chosen move and searches the
+   * position after it until the opponent moves.  The results are kept in
+   * the transposition table, so when the prediction is right the next
+   * search finds most of its tree there.  Any other move only stops the
+   * ponder search.
+   * @param pondering  true to search on the time of the opponent
+   */
+  public void setPondering(boolean pondering) {
+    this.pondering = pondering;
+    if (!pondering) {
+      stopPondering();
+    }
+  }
+
+  /**
+   * Start the ponder search after the machine player has moved.
+   * The predicted reply is the hash move of the position, which the
+   * search that chose the last move has left in the table.
+   */
+  private void startPondering() {
+    this.ponderMove = PackedMove.NONE;
+    if (!this.pondering) {
+      return;
+    }
+    int symmetry = currentBoard.canonicalSymmetry();
+    long entry = table.probe(currentBoard.zobristKey(humanColor, symmetry));
+    int predicted = PackedMove.transform(TranspositionTable.move(entry), symmetry);
+    if (predicted == PackedMove.NONE 
+        || !currentBoard.isValidMove(humanColor, PackedMove.decode(predicted))) {
+      return;
+    }
+    Board board = currentBoard.copy();
+    board.move(predicted, humanColor);
+    if (board.success(humanColor)) {
+      return;
+    }
+    this.ponderMove = predicted;
+    this.ponderStopped = false;
+    this.ponderThread = new Thread(new Ponderer(board), "ponder");
+    this.ponderThread.setDaemon(true);
+    this.ponderThread.start();
+  }
+
+  /**
+   * Stop the ponder search, if one is running, and wait for it to finish
+   */
+  private void stopPondering() {
+    if (this.ponderThread == null) {
+      return;
+    }
+    this.ponderStopped = true;
+    try {
+      this.ponderThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    this.ponderThread = null;
+    if (this.verbose) {
+      System.out.println("nodes pondered: " + this.ponderNodes);
+    }
+  }
+
+  /**
+   * Stop pondering and shut down the threads of the parallel search.  A host
+   * of many games closes the player of every game that ends, so no threads
+   * are left waiting.  A closed player searches on the calling thread only.
+   */
+  public void close() {
+    stopPondering();
+    this.pondering = false;
+    if (this.pool != null) {
+      this.pool.shutdownNow();
+      this.pool = null;
+    }
+  }
 
   /**
    * Make the opponent do the given move.
@@ -85,6 +971,12 @@ public class MachinePlayer extends Player {
    * @return true if the move is valid, otherwise false
    */
   public boolean opponentMove(Move m) {
+    stopPondering();
+    if (this.verbose && this.ponderMove != PackedMove.NONE 
+        && PackedMove.encode(m) == this.ponderMove) {
+      System.out.println("ponder hit");
+    }
+    this.ponderMove = PackedMove.NONE;
     if (this.currentBoard.isValidMove(humanColor, m)) {
       this.currentBoard.move(m, humanColor);
       return true;
@@ -102,9 +994,13 @@ public class MachinePlayer extends Player {
    * @param m  A move of the machine player
    */
   public boolean forceMove(Move m) {
+    stopPondering();
+    this.ponderMove = PackedMove.NONE;
     if (this.currentBoard.isValidMove(this.machineColor, m)) {
       this.currentBoard.move(m, this.machineColor);
-      currentBoard.print();
+      if (this.verbose) {
+        currentBoard.print();
+      }
       return true;
     }
     return false;
@@ -131,51 +1027,641 @@ public class MachinePlayer extends Player {
   }
   
   /**
-   * Perform miniMax tree search
-   * @param color  The chip color of the player
-   * @param board  The current game board
-   * @param depth  Current search depth
-   * @param opponentBestScore  The current best score of the opponent 
-   * @return The best score of the current player
-   */
-  private int treeSearch(int color, Board board, int depth, int opponentBestScore) {
-    int opponentColor = color==machineColor? humanColor:machineColor;
-    int bestScore = color==machineColor? Integer.MIN_VALUE:Integer.MAX_VALUE;
-    List<Move> moves = board.movesGenerator(color);
-    ListIterator<Move> ite = moves.listIterator();
-    while (ite.hasNext()) {
-      Move m = ite.next();
+   * Searches one root move of the parallel search on the board of the
+   * worker of its thread.
+   */
+  private class RootMoveTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final Move move;
+    private final int depth;
+    private final AtomicInteger alpha;
+    private final int upper;
+
+    RootMoveTask(Move move, int depth, AtomicInteger alpha, int upper) {
+      this.move = move;
+      this.depth = depth;
+      this.alpha = alpha;
+      this.upper = upper;
+    }
+
+    protected void compute() {
+      if (aborted) {
+        return;
+      }
+      SearchWorker worker = rootWorker();
+      //a task may search fewer than the 1024 positions between two checks,
+      //so the time and the budget are checked before every task
+      worker.reportNodes();
+      if (aborted) {
+        return;
+      }
+      worker.depthLimit = depth;
+      worker.rootAlpha = alpha;
+      if (!worker.board.move(move, machineColor)) {
+        worker.board.retractMove(move);
+        worker.counters.illegalMoves++;
+        collect(worker);
+        return;
+      }
+      worker.counters.nodes++;
+      int score = boardEvaluation(worker.board);
+      if (score!=MACHINE_WIN && score!=HUMAN_WIN) {
+        score = worker.searchRootMove(alpha.get(), upper, true);
+      }
+      worker.board.retractMove(move);
+      //the last positions of the task count for the budget of the move
+      worker.reportNodes();
+      collect(worker);
+      if (!aborted) {
+        //a task that finishes later must not lower the bound another task raised
+        alpha.accumulateAndGet(offerRootMove(move, score), Math::max);
+      }
+    }
+  }
+
+  /**
+   * A helper of the lazy SMP search.  Searches the root position with
+   * iterative deepening on its own copy of the board until the main search
+   * is done.  Odd helpers start one depth deeper and every helper starts
+   * with different root moves, so they fill the table with different parts
+   * of the tree ahead of the main search.
+   */
+  private class LazyHelper implements Runnable {
+    private final int id;
+    private final Board board;
+
+    LazyHelper(int id, Board board) {
+      this.id = id;
+      this.board = board;
+    }
+
+    public void run() {
+      SearchWorker worker = new SearchWorker(board);
+      worker.helper = true;
+      List<Move> moves = board.movesGenerator(machineColor);
+      if (!moves.isEmpty()) {
+        Collections.rotate(moves, id * moves.size() / parallelism);
+      }
+      worker.searchIterations(moves, 1 + id % 2, false);
+      collect(worker);
+    }
+  }
+
+  /**
+   * Searches the position after the predicted reply of the opponent with
+   * iterative deepening until it is stopped.  Like the helpers of the lazy
+   * SMP search, it only leaves its results in the table.
+   */
+  private class Ponderer implements Runnable {
+    private final Board board;
+
+    Ponderer(Board board) {
+      this.board = board;
+    }
+
+    public void run() {
+      SearchWorker worker = new SearchWorker(board);
+      worker.ponder = true;
+      worker.searchIterations(board.movesGenerator(machineColor), 1, true);
+      ponderNodes = worker.counters.nodes;
+    }
+  }
+
+  /**
+   * Searches positions on its own board, so that several workers can
+   * search at the same time.  The table and the deadline are shared.
+   */
+  private class SearchWorker {
+    private final Board board;
+    //counters of the statistics of the search
+    private final SearchStats.Counters counters = new SearchStats.Counters();
+    //depth of the running search iteration
+    private int depthLimit;
+    //best score at the root of a parallel search, null when searching alone
+    private AtomicInteger rootAlpha;
+    //helpers of the lazy SMP search also stop when the main search is done
+    private boolean helper;
+    //the ponder search has no deadline and only stops when it is told to
+    private boolean ponder;
+    //positions searched that are not yet added to the node budget, unlike
+    //the counters they are kept when the counters are collected
+    private int unreported;
+    //the search and the root search a worker of the parallel root search was last used in
+    private int searchCount;
+    private int rootSearchCount;
+    //one buffer of packed moves per search depth, reused between searches
+    private int[][] moveBuffers = new int[0][];
+    //sort keys of the moves of each search depth
+    private long[][] orderKeys = new long[0][];
+    //the last two moves that caused a cutoff at each search depth
+    private int[][] killers = new int[0][];
+    //history[from][to] grows with the cutoffs a move caused anywhere in the
+    //tree, an add move has from 0, which is a corner and never holds a chip
+    private final int[][] history = new int[Squares.NUM][Squares.NUM];
+
+    SearchWorker(Board board) {
+      this.board = board;
+    }
+
+    private int[] moveBuffer(int depth) {
+      if (depth >= moveBuffers.length) {
+        moveBuffers = Arrays.copyOf(moveBuffers, depth + 1);
+        orderKeys = Arrays.copyOf(orderKeys, depth + 1);
+        killers = Arrays.copyOf(killers, depth + 1);
+      }
+      if (moveBuffers[depth] == null) {
+        moveBuffers[depth] = new int[Board.MAX_MOVES];
+        orderKeys[depth] = new long[Board.MAX_MOVES];
+        killers[depth] = new int[2];
+      }
+      return moveBuffers[depth];
+    }
+
+    //forget the killers of the last search, which were found two plies
+    //away from the same depths, and age the history table
+    private void newSearch() {
+      for (int[] killer : killers) {
+        if (killer != null) {
+          Arrays.fill(killer, PackedMove.NONE);
+        }
+      }
+      halveHistory();
+    }
+
+    private void halveHistory() {
+      for (int[] row : history) {
+        for (int i = 0; i < row.length; i++) {
+          row[i] >>= 1;
+        }
+      }
+    }
+
+    //forget the history of the last game
+    private void clearHistory() {
+      for (int[] row : history) {
+        Arrays.fill(row, 0);
+      }
+    }
+
+    /**
+     * Sort the moves of a position: the hash move first, then the killer
+     * moves of the depth, then the other moves by their history score
+     * @param moves  The generated packed moves
+     * @param count  The number of generated moves
+     * @param depth  Current search depth
+     * @param hashMove  The packed best move from the transposition table
+     */
+    private void orderMoves(int[] moves, int count, int depth, int hashMove) {
+      long[] keys = orderKeys[depth];
+      int[] killer = killers[depth];
+      for (int i = 0; i < count; i++) {
+        int m = moves[i];
+        int score;
+        if (m == hashMove) {
+          score = Integer.MAX_VALUE;
+        } else if (m == killer[0]) {
+          score = Integer.MAX_VALUE - 1;
+        } else if (m == killer[1]) {
+          score = Integer.MAX_VALUE - 2;
+        } else {
+          score = history[PackedMove.from(m)][PackedMove.to(m)];
+        }
+        //packed moves are positive, so the move fills the low word of the key
+        keys[i] = ((long) score << 32) | m;
+      }
+      Arrays.sort(keys, 0, count);
+      for (int i = 0; i < count; i++) {
+        moves[i] = (int) keys[count - 1 - i];
+      }
+    }
+
+    //remember a move that caused a cutoff at the given depth
+    private void recordCutoff(int m, int depth, int draft) {
+      int[] killer = killers[depth];
+      if (killer[0] != m) {
+        killer[1] = killer[0];
+        killer[0] = m;
+      }
+      int[] row = history[PackedMove.from(m)];
+      row[PackedMove.to(m)] += draft * draft;
+      if (row[PackedMove.to(m)] >= 1 << 30) {
+        //keep history scores below the killer scores
+        halveHistory();
+      }
+    }
+
+    /**
+     * Look up a position of the search in the table and count the probe
+     * @param key  The key of the position
+     * @param depth  Current search depth
+     * @return the table entry of the position, 0 if there is none
+     */
+    private long probe(long key, int depth) {
+      long entry = table.probe(key);
+      counters.tableProbes++;
+      if (entry != 0) {
+        counters.tableHits++;
+      }
+      if (depth > counters.maxDepth) {
+        counters.maxDepth = depth;
+      }
+      return entry;
+    }
+
+    /**
+     * Indicate whether a table entry decides the score of a position without
+     * a search: an exact score deep enough, a lower bound not below upper
+     * or an upper bound not above lower.  Scores and bounds are seen from
+     * the machine player.
+     * @param entry  The table entry, 0 if there is none
+     * @param draft  The number of moves still to be searched
+     * @param depth  Current search depth
+     * @param lower  The score the position is not searched for at or below
+     * @param upper  The score the position is not searched for at or above
+     */
+    private boolean decides(long entry, int draft, int depth, int lower, int upper) {
+      if (entry == 0 || TranspositionTable.depth(entry) < draft) {
+        return false;
+      }
+      int score = fromTableScore(TranspositionTable.score(entry), depth);
+      int bound = TranspositionTable.bound(entry);
+      return bound == TranspositionTable.EXACT
+          || (bound == TranspositionTable.LOWER && score >= upper)
+          || (bound == TranspositionTable.UPPER && score <= lower);
+    }
+
+    /**
+     * Generate the moves of a position into a buffer, in the order they are searched
+     * @param color  The chip color of the player to move
+     * @param moves  The move buffer of the depth
+     * @param depth  Current search depth
+     * @param hashMove  The packed best move from the transposition table
+     * @return the number of moves
+     */
+    private int generateMoves(int color, int[] moves, int depth, int hashMove) {
+      int count = board.movesGenerator(color, moves);
+      if (moveOrdering) {
+        orderMoves(moves, count, depth, hashMove);
+      } else {
+        orderHashMove(moves, count, hashMove);
+      }
+      return count;
+    }
+
+    //make a move of the search and count it, an illegal move is retracted
+    //again and false is returned
+    private boolean makeMove(int m, int color) {
       if (!board.move(m, color)) {
+        counters.illegalMoves++;
         board.retractMove(m);
-        continue;
+        return false;
+      }
+      counters.nodes++;
+      checkBudget();
+      return true;
+    }
+
+    //stop the search when the time or the node budget runs out,
+    //checked every 1024 positions, the ponder search has no budget
+    private void checkBudget() {
+      if (ponder || ++unreported < 1024) {
+        return;
+      }
+      reportNodes();
+    }
+
+    //add the positions searched since the last check to the node budget
+    //and stop the search if the time or the budget ran out
+    private void reportNodes() {
+      long nodes = unreported;
+      unreported = 0;
+      if (System.currentTimeMillis() >= deadline
+          || (nodeLimit > 0 && budgetNodes.addAndGet(nodes) >= nodeLimit)) {
+        aborted = true;
+      }
+    }
+
+    private boolean stopped() {
+      if (ponder) {
+        return ponderStopped;
       }
-      int score = boardEvaluation(board);
-      if (score == MACHINE_WIN) {
-        //assign a higher score to a win in smaller moves
-        score -= depth;
-      } else if (score == HUMAN_WIN) {
-        score += depth;
-      } else if (this.searchDepth > depth) {
-        //no one wins now, search deeper
-        score = treeSearch(opponentColor, board, depth+1, bestScore);
-      }
-      //System.out.println("Tree search Score: " + score);
-      if (color == machineColor && score > bestScore) {
-        bestScore = score;
-        if (bestScore >= opponentBestScore) {
+      return aborted || (helper && helpersStopped);
+    }
+
+    /**
+     * Search the root moves of the machine player with iterative deepening
+     * until the last depth is done or the worker is stopped, the root loop
+     * of the lazy SMP helpers and of the ponder search
+     * @param moves  The root moves, in the order they are searched
+     * @param firstDepth  The depth of the first iteration
+     * @param storeBest  true to store the best move of every finished
+     *  iteration in the table and search it first in the next one, and to
+     *  stop once a win or a loss is found
+     */
+    private void searchIterations(List<Move> moves, int firstDepth, boolean storeBest) {
+      int symmetry = board.canonicalSymmetry();
+      long key = board.zobristKey(machineColor, symmetry);
+      for (int depth = firstDepth; depth <= searchDepth && !stopped(); depth++) {
+        depthLimit = depth;
+        int bestScore = Integer.MIN_VALUE;
+        Move bestMove = null;
+        for (Move m : moves) {
+          if (!board.move(m, machineColor)) {
+            counters.illegalMoves++;
+            board.retractMove(m);
+            continue;
+          }
+          counters.nodes++;
+          int score = boardEvaluation(board);
+          if (score!=MACHINE_WIN && score!=HUMAN_WIN && depth > 1) {
+            score = searchRootMove(bestScore, INFINITE_SCORE, bestScore != Integer.MIN_VALUE);
+          }
           board.retractMove(m);
+          if (stopped()) {
+            break;
+          }
+          if (score > bestScore) {
+            bestScore = score;
+            bestMove = m;
+          }
+        }
+        if (!storeBest) {
+          continue;
+        }
+        if (bestMove == null || stopped()) {
           break;
         }
-      } else if (color == humanColor && score < bestScore) {
-        bestScore = score;
-        if (bestScore <= opponentBestScore) {
-          board.retractMove(m);
+        //the next search of the machine player starts with this move
+        table.store(key, toTableScore(bestScore, 1), depth, TranspositionTable.EXACT, 
+            PackedMove.transform(PackedMove.encode(bestMove), symmetry));
+        moves.remove(bestMove);
+        moves.add(0, bestMove);
+        if (bestScore > WIN_BOUND || bestScore < -WIN_BOUND) {
           break;
         }
       }
-      board.retractMove(m);
     }
-    return bestScore;
+
+    /**
+     * Search a root move that is made on the board
+     * @param alpha  The best score of the other root moves
+     * @param beta  The score that ends the root search
+     * @param nullWindow  true to only test whether the move beats alpha first
+     * @return the score of the move, or a bound not above alpha if it does
+     *  not beat alpha
+     */
+    private int searchRootMove(int alpha, int beta, boolean nullWindow) {
+      if (!pvs) {
+        return treeSearch(humanColor, 2, alpha);
+      }
+      alpha = Math.max(alpha, -INFINITE_SCORE);
+      if (nullWindow) {
+        int score = -principalVariationSearch(humanColor, 2, -alpha - 1, -alpha);
+        if (score <= alpha || score >= beta || stopped()) {
+          return score;
+        }
+      }
+      return -principalVariationSearch(humanColor, 2, -beta, -alpha);
+    }
+
+    /**
+     * Perform miniMax tree search
+     * @param color  The chip color of the player
+     * @param depth  Current search depth
+     * @param opponentBestScore  The current best score of the opponent 
+     * @return The best score of the current player
+     */
+    private int treeSearch(int color, int depth, int opponentBestScore) {
+      int opponentColor = color==machineColor? humanColor:machineColor;
+      //number of moves still to be searched from this position
+      int draft = this.depthLimit - depth + 1;
+      int symmetry = board.canonicalSymmetry();
+      long key = board.zobristKey(color, symmetry);
+      long entry = probe(key, depth);
+      if (color == machineColor? decides(entry, draft, depth, Integer.MIN_VALUE, opponentBestScore)
+          : decides(entry, draft, depth, opponentBestScore, Integer.MAX_VALUE)) {
+        return fromTableScore(TranspositionTable.score(entry), depth);
+      }
+      int bestScore = color==machineColor? Integer.MIN_VALUE:Integer.MAX_VALUE;
+      int bestMove = PackedMove.NONE;
+      boolean cutoff = false;
+      int[] moves = moveBuffer(depth);
+      int count = generateMoves(color, moves, depth,
+          PackedMove.transform(TranspositionTable.move(entry), symmetry));
+      for (int i = 0; i < count; i++) {
+        int m = moves[i];
+        if (!makeMove(m, color)) {
+          continue;
+        }
+        if (stopped()) {
+          board.retractMove(m);
+          return 0;
+        }
+        if (depth == 2 && rootAlpha != null) {
+          //the root moves searched in parallel may have raised the score to beat
+          opponentBestScore = Math.max(opponentBestScore, rootAlpha.get());
+        }
+        int score = boardEvaluation(board);
+        if (score == MACHINE_WIN) {
+          //assign a higher score to a win in smaller moves
+          score -= depth;
+        } else if (score == HUMAN_WIN) {
+          score += depth;
+        } else if (this.depthLimit > depth) {
+          //no one wins now, search deeper
+          score = treeSearch(opponentColor, depth+1, bestScore);
+          if (stopped()) {
+            board.retractMove(m);
+            return 0;
+          }
+        }
+        //System.out.println("Tree search Score: " + score);
+        if (color == machineColor && score > bestScore) {
+          bestScore = score;
+          bestMove = m;
+          if (bestScore >= opponentBestScore) {
+            cutoff = true;
+            counters.cutoff(i);
+            board.retractMove(m);
+            break;
+          }
+        } else if (color == humanColor && score < bestScore) {
+          bestScore = score;
+          bestMove = m;
+          if (bestScore <= opponentBestScore) {
+            cutoff = true;
+            counters.cutoff(i);
+            board.retractMove(m);
+            break;
+          }
+        }
+        board.retractMove(m);
+      }
+      if (bestMove != PackedMove.NONE) {
+        //a cutoff only bounds the score, otherwise the score is exact
+        int bound = TranspositionTable.EXACT;
+        if (cutoff) {
+          bound = color==machineColor? TranspositionTable.LOWER:TranspositionTable.UPPER;
+          recordCutoff(bestMove, depth, draft);
+        }
+        table.store(key, toTableScore(bestScore, depth), draft, bound, 
+            PackedMove.transform(bestMove, symmetry));
+      }
+      return bestScore;
+    }
+
+    /**
+     * Perform principal variation search, a negamax alpha-beta search.
+     * Scores are seen from the player to move, a score not above alpha is
+     * an upper bound and a score not below beta a lower bound of the true score.
+     * @param color  The chip color of the player to move
+     * @param depth  Current search depth
+     * @param alpha  The score the player to move can already reach
+     * @param beta  The score the opponent lets the player to move reach at most
+     * @return The best score of the player to move
+     */
+    private int principalVariationSearch(int color, int depth, int alpha, int beta) {
+      int opponentColor = color==machineColor? humanColor:machineColor;
+      //scores of the table and of the evaluation are seen from the machine player
+      int sign = color==machineColor? 1:-1;
+      int draft = this.depthLimit - depth + 1;
+      int symmetry = board.canonicalSymmetry();
+      long key = board.zobristKey(color, symmetry);
+      long entry = probe(key, depth);
+      //the window of the player to move is turned to the view of the machine player
+      if (sign > 0? decides(entry, draft, depth, alpha, beta) : decides(entry, draft, depth, -beta, -alpha)) {
+        return sign * fromTableScore(TranspositionTable.score(entry), depth);
+      }
+      //no score is better than a win with the next move
+      if (alpha >= MACHINE_WIN - depth) {
+        return MACHINE_WIN - depth;
+      }
+      int originalAlpha = alpha;
+      int bestScore = -INFINITE_SCORE;
+      int bestMove = PackedMove.NONE;
+      int[] moves = moveBuffer(depth);
+      int count = generateMoves(color, moves, depth,
+          PackedMove.transform(TranspositionTable.move(entry), symmetry));
+      for (int i = 0; i < count; i++) {
+        int m = moves[i];
+        if (!makeMove(m, color)) {
+          continue;
+        }
+        if (stopped()) {
+          board.retractMove(m);
+          return 0;
+        }
+        int score = boardEvaluation(board);
+        if (score == MACHINE_WIN) {
+          //assign a higher score to a win in smaller moves
+          score = sign * (score - depth);
+        } else if (score == HUMAN_WIN) {
+          score = sign * (score + depth);
+        } else if (this.depthLimit > depth) {
+          //no one wins now, search deeper
+          if (bestMove == PackedMove.NONE) {
+            score = -principalVariationSearch(opponentColor, depth+1, -beta, -alpha);
+          } else {
+            //test whether the move beats the best move with a null window
+            score = -principalVariationSearch(opponentColor, depth+1, -alpha - 1, -alpha);
+            if (score > alpha && score < beta && !stopped()) {
+              score = -principalVariationSearch(opponentColor, depth+1, -beta, -alpha);
+            }
+          }
+          if (stopped()) {
+            board.retractMove(m);
+            return 0;
+          }
+        } else {
+          score = sign * score;
+        }
+        board.retractMove(m);
+        if (score > bestScore) {
+          bestScore = score;
+          bestMove = m;
+          alpha = Math.max(alpha, score);
+          if (alpha >= beta) {
+            counters.cutoff(i);
+            break;
+          }
+        }
+      }
+      if (bestMove != PackedMove.NONE) {
+        int bound = TranspositionTable.EXACT;
+        if (bestScore >= beta) {
+          bound = sign > 0? TranspositionTable.LOWER:TranspositionTable.UPPER;
+          recordCutoff(bestMove, depth, draft);
+        } else if (bestScore <= originalAlpha) {
+          bound = sign > 0? TranspositionTable.UPPER:TranspositionTable.LOWER;
+          //all moves failed low, none of them is known to be the best
+          bestMove = PackedMove.transform(TranspositionTable.move(entry), symmetry);
+        }
+        table.store(key, toTableScore(sign * bestScore, depth), draft, bound, 
+            PackedMove.transform(bestMove, symmetry));
+      }
+      return bestScore;
+    }
+  }
+  
+  /**
+   * Move the best move found by an earlier search to the front of the list
+   * @param moves  The generated moves
+   * @param hashMove  The packed best move from the transposition table
+   */
+  private void orderHashMove(List<Move> moves, int hashMove) {
+    if (hashMove == PackedMove.NONE) {
+      return;
+    }
+    ListIterator<Move> ite = moves.listIterator();
+    while (ite.hasNext()) {
+      Move m = ite.next();
+      if (PackedMove.encode(m) == hashMove) {
+        ite.remove();
+        moves.add(0, m);
+        return;
+      }
+    }
+  }
+  
+  /**
+   * Move the best move found by an earlier search to the front of the buffer
+   * @param moves  The generated packed moves
+   * @param count  The number of generated moves
+   * @param hashMove  The packed best move from the transposition table
+   */
+  private void orderHashMove(int[] moves, int count, int hashMove) {
+    if (hashMove == PackedMove.NONE) {
+      return;
+    }
+    for (int i = 0; i < count; i++) {
+      if (moves[i] == hashMove) {
+        System.arraycopy(moves, 0, moves, 1, i);
+        moves[0] = hashMove;
+        return;
+      }
+    }
+  }
+  
+  /**
+   * Win scores depend on the depth they are found at, the table keeps them
+   * relative to the stored position instead.
+   */
+  private int toTableScore(int score, int depth) {
+    if (score > WIN_BOUND) {
+      return score + depth;
+    } else if (score < -WIN_BOUND) {
+      return score - depth;
+    }
+    return score;
+  }
+  
+  private int fromTableScore(int score, int depth) {
+    if (score > WIN_BOUND) {
+      return score - depth;
+    } else if (score < -WIN_BOUND) {
+      return score + depth;
+    }
+    return score;
   }
 
 }
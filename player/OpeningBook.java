@@ -0,0 +1,132 @@
+package player;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ *  A book of opening moves, read from a file written by OpeningBookGenerator.
+ *  The file starts with a magic number and the number of entries, followed
+ *  by the entries sorted by key.  An entry is 16 bytes: the canonical
+ *  Zobrist key of a position with the player to move, the packed best move
+ *  in the canonical form and its score.  Mirrored positions share an entry.
+ *
+ *  The file is memory-mapped on the first lookup and searched in place with
+ *  a binary search, so opening a book costs nothing and the pages of a
+ *  large book are only read when they are needed.
+ */
+public final class OpeningBook {
+
+  public static final long MAGIC = 0x4e4554424f4f4b31L;
+  public static final int HEADER_BYTES = 16;
+  public static final int ENTRY_BYTES = 16;
+
+  private final File file;
+  private volatile ByteBuffer entries;
+  private int count;
+
+  /**
+   * Creates a book that reads the given file when it is first used.
+   * @param file  A file written by OpeningBookGenerator
+   */
+  public OpeningBook(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Return the book move of a position.
+   * @param board  The position
+   * @param color  The color of the player to move
+   * @return the packed book move, or PackedMove.NONE if the position is not
+   *  in the book
+   * @throws UncheckedIOException if the file cannot be read
+   */
+  public int lookup(Board board, int color) {
+    int symmetry = board.canonicalSymmetry();
+    int i = find(board.zobristKey(color, symmetry));
+    if (i < 0) {
+      return PackedMove.NONE;
+    }
+    return PackedMove.transform(entries.getInt(HEADER_BYTES + i * ENTRY_BYTES + 8), symmetry);
+  }
+
+  /**
+   * Return the number of positions in the book.
+   * @throws UncheckedIOException if the file cannot be read
+   */
+  public int size() {
+    load();
+    return count;
+  }
+
+  //binary search of the sorted keys, return the index of the key or -1
+  private int find(long key) {
+    ByteBuffer buffer = load();
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long k = buffer.getLong(HEADER_BYTES + mid * ENTRY_BYTES);
+      if (k < key) {
+        low = mid + 1;
+      } else if (k > key) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  //map the file on the first call
+  private ByteBuffer load() {
+    ByteBuffer buffer = entries;
+    if (buffer != null) {
+      return buffer;
+    }
+    synchronized (this) {
+      if (entries == null) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+          MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+          if (mapped.capacity() < HEADER_BYTES || mapped.getLong(0) != MAGIC) {
+            throw new IOException(file + " is not an opening book");
+          }
+          long n = mapped.getLong(8);
+          if (n < 0 || HEADER_BYTES + n * ENTRY_BYTES > mapped.capacity()) {
+            throw new IOException(file + " is truncated");
+          }
+          count = (int) n;
+          entries = mapped;
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      return entries;
+    }
+  }
+
+  /**
+   * Write a book file.
+   * @param file  The file to write
+   * @param moves  The packed book move of each canonical key, in the canonical form
+   * @param scores  The score of the book move of each canonical key
+   */
+  public static void write(File file, Map<Long, Integer> moves, Map<Long, Integer> scores)
+      throws IOException {
+    List<Long> keys = new ArrayList<>(moves.keySet());
+    Collections.sort(keys);
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeLong(MAGIC);
+      out.writeLong(keys.size());
+      for (long key : keys) {
+        out.writeLong(key);
+        out.writeInt(moves.get(key));
+        out.writeInt(scores.get(key));
+      }
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package player;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ *  Writes an opening book by searching the positions of the first plies of
+ *  the game.  The machine player can have either color, so the book is
+ *  built for both: where the book side is to move, only its best move is
+ *  followed, and where the other side is to move, every move is followed.
+ *  Mirrored positions are searched only once.
+ *
+ *  Usage: java player.OpeningBookGenerator file [plies] [depth]
+ */
+public class OpeningBookGenerator {
+
+  public static final int PLIES = 4;
+  public static final int DEPTH = 5;
+
+  private final int plies;
+  private final MachinePlayer[] players = new MachinePlayer[2];
+  private final Map<Long, Integer> moves = new HashMap<>();
+  private final Map<Long, Integer> scores = new HashMap<>();
+  //canonical keys of the positions already expanded
+  private final Set<Long> visited = new HashSet<>();
+
+  /**
+   * @param plies  The book holds positions with fewer chips than this
+   * @param depth  The search depth of a book move
+   */
+  public OpeningBookGenerator(int plies, int depth) {
+    this.plies = plies;
+    for (int color = 0; color < 2; color++) {
+      //one player per color, so the table is shared by all its searches
+      players[color] = new MachinePlayer(color, depth);
+      players[color].setVerbose(false);
+      //every book move comes from a search, so its score is the score
+      //of that search and not of an earlier one
+      players[color].setTacticalCheck(false);
+      players[color].setSolverNodeLimit(0);
+    }
+  }
+
+  /**
+   * Search the book positions of both colors and write the book.
+   * @param file  The file to write
+   * @return the number of positions in the book
+   */
+  public int generate(File file) throws IOException {
+    expand(new Board(), Board.WHITE, Board.WHITE, 0);
+    visited.clear();
+    expand(new Board(), Board.WHITE, Board.BLACK, 0);
+    OpeningBook.write(file, moves, scores);
+    return moves.size();
+  }
+
+  /**
+   * Add a position and the positions after it to the book
+   * @param board  The position
+   * @param color  The color of the player to move
+   * @param bookColor  The color of the player that plays from the book
+   * @param ply  The number of moves played
+   */
+  private void expand(Board board, int color, int bookColor, int ply) {
+    if (ply >= plies) {
+      return;
+    }
+    int symmetry = board.canonicalSymmetry();
+    long key = board.zobristKey(color, symmetry);
+    if (!visited.add(key)) {
+      return;
+    }
+    if (color == bookColor) {
+      int m = bookMove(board, color, key, symmetry);
+      if (m != PackedMove.NONE) {
+        follow(board, m, color, bookColor, ply);
+      }
+      return;
+    }
+    int[] buffer = new int[Board.MAX_MOVES];
+    int count = board.movesGenerator(color, buffer);
+    for (int i = 0; i < count; i++) {
+      follow(board, buffer[i], color, bookColor, ply);
+    }
+  }
+
+  //make a move and expand the position after it unless the game is over
+  private void follow(Board board, int m, int color, int bookColor, int ply) {
+    int next = color == Board.WHITE? Board.BLACK:Board.WHITE;
+    if (board.move(m, color) && !board.success(Board.WHITE) && !board.success(Board.BLACK)) {
+      expand(board, next, bookColor, ply + 1);
+    }
+    board.retractMove(m);
+  }
+
+  //search the best move of a position and record it in the canonical form
+  private int bookMove(Board board, int color, long key, int symmetry) {
+    Integer known = moves.get(key);
+    if (known != null) {
+      return PackedMove.transform(known, symmetry);
+    }
+    MachinePlayer player = players[color];
+    player.setBoard(board);
+    Move best = player.chooseMove();
+    if (best == null) {
+      return PackedMove.NONE;
+    }
+    int m = PackedMove.encode(best);
+    moves.put(key, PackedMove.transform(m, symmetry));
+    scores.put(key, player.getRootScore());
+    return m;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.out.println("Usage: java player.OpeningBookGenerator file [plies] [depth]");
+      System.exit(1);
+    }
+    int plies = args.length > 1? Integer.parseInt(args[1]):PLIES;
+    int depth = args.length > 2? Integer.parseInt(args[2]):DEPTH;
+    long start = System.currentTimeMillis();
+    int size = new OpeningBookGenerator(plies, depth).generate(new File(args[0]));
+    System.out.println(size + " positions in " + (System.currentTimeMillis() - start) + " ms");
+  }
+}
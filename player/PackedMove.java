@@ -0,0 +1,74 @@
+package player;
+
+/**
+ *  Packs a move into a single int so it can be stored without allocating a
+ *  Move object.  Bits 0-5 hold the new square, bits 6-11 the old square of a
+ *  step move and bits 12-13 the move kind.  Squares are numbered y*8 + x.
+ *  A quit move packs to zero, which also stands for "no move".
+ */
+public final class PackedMove {
+
+  public static final int NONE = 0;
+
+  private PackedMove() {
+  }
+
+  // Pack an add move to the given square.
+  public static int add(int to) {
+    return (Move.ADD << 12) | to;
+  }
+
+  // Pack a step move from the old square to the new square.
+  public static int step(int to, int from) {
+    return (Move.STEP << 12) | (from << 6) | to;
+  }
+
+  public static int kind(int packed) {
+    return packed >>> 12;
+  }
+
+  public static int to(int packed) {
+    return packed & 63;
+  }
+
+  public static int from(int packed) {
+    return (packed >>> 6) & 63;
+  }
+
+  // Map a packed move by one of the symmetries of Squares.SYMMETRY.
+  public static int transform(int packed, int symmetry) {
+    int[] map = Squares.SYMMETRY[symmetry];
+    switch (kind(packed)) {
+    case Move.ADD:
+      return add(map[to(packed)]);
+    case Move.STEP:
+      return step(map[to(packed)], map[from(packed)]);
+    default:
+      return packed;
+    }
+  }
+
+  public static int encode(Move m) {
+    switch (m.moveKind) {
+    case Move.ADD:
+      return add(Squares.square(m.x1, m.y1));
+    case Move.STEP:
+      return step(Squares.square(m.x1, m.y1), Squares.square(m.x2, m.y2));
+    default:
+      return NONE;
+    }
+  }
+
+  public static Move decode(int packed) {
+    int to = to(packed);
+    switch (kind(packed)) {
+    case Move.ADD:
+      return new Move(Squares.x(to), Squares.y(to));
+    case Move.STEP:
+      int from = from(packed);
+      return new Move(Squares.x(to), Squares.y(to), Squares.x(from), Squares.y(from));
+    default:
+      return new Move();
+    }
+  }
+}
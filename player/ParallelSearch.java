@@ -0,0 +1,15 @@
+package player;
+
+/**
+ *  The ways the machine player splits a search between threads.  Both
+ *  search on the calling thread only when the player has one thread.
+ */
+public enum ParallelSearch {
+
+  //the first root move is searched alone to get a score to beat, then the
+  //other root moves are searched in parallel, sharing the best score
+  ROOT_SPLIT,
+  //helper threads search the whole position at staggered depths and share
+  //their results with the main search only through the transposition table
+  LAZY_SMP
+}
@@ -0,0 +1,221 @@
+package player;
+
+import java.util.Arrays;
+
+/**
+ *  A proof-number search that tries to prove that one color can force a
+ *  network.  The tree is grown best first: every step expands the most
+ *  proving leaf, the leaf that takes the least work to prove or disprove
+ *  the root, and updates the proof and disproof numbers of its ancestors.
+ *  The search ends when the root is proven or disproven or when it has
+ *  created as many nodes as the budget allows.
+ *
+ *  At OR nodes the attacker is to move and one winning move proves the
+ *  node, at AND nodes the defender is to move and every move has to be
+ *  refuted.  A move that completes networks of both colors wins for the
+ *  opponent of the player that made it, as in the rules of the game.
+ */
+final class ProofNumberSearch {
+
+  public static final int UNKNOWN = 0;
+  public static final int PROVEN = 1;
+  public static final int DISPROVEN = 2;
+
+  private static final int INFINITY = Integer.MAX_VALUE;
+
+  private final Board board;
+  private final int attacker;
+  private final int defender;
+  private final int[] moves = new int[Board.MAX_MOVES];
+  private Node root;
+  private long nodes;
+
+  private static final class Node {
+    //the packed move that leads to this node
+    final int move;
+    final Node parent;
+    //true if the defender is to move
+    final boolean and;
+    int proof = 1;
+    int disproof = 1;
+    //null until the node is expanded
+    Node[] children;
+
+    Node(int move, Node parent, boolean and) {
+      this.move = move;
+      this.parent = parent;
+      this.and = and;
+    }
+  }
+
+  /**
+   * Creates a search on a board.  The board is changed during the search
+   * and is the same again when solve returns.
+   * @param board  The position
+   * @param attacker  The color that tries to complete a network
+   */
+  ProofNumberSearch(Board board, int attacker) {
+    this.board = board;
+    this.attacker = attacker;
+    this.defender = attacker == Board.WHITE? Board.BLACK:Board.WHITE;
+  }
+
+  /**
+   * Search until the position is solved or the budget runs out
+   * @param toMove  The color of the player to move
+   * @param nodeLimit  The number of nodes the search may create
+   * @param deadline  The time in milliseconds when the search gives up
+   * @return PROVEN if the attacker can force a network, DISPROVEN if the
+   *  defender can, and UNKNOWN if the budget or the time ran out first.  Only networks
+   *  end a game, so a position that is not proven is never disproven just
+   *  because the attacker has no win.
+   */
+  int solve(int toMove, long nodeLimit, long deadline) {
+    root = new Node(PackedMove.NONE, null, toMove == defender);
+    nodes = 1;
+    while (root.proof != 0 && root.disproof != 0 && nodes < nodeLimit) {
+      if (System.currentTimeMillis() >= deadline) {
+        return UNKNOWN;
+      }
+      Node leaf = mostProving();
+      expand(leaf);
+      update(leaf);
+      //take the moves back up to the root
+      for (Node n = leaf; n.parent != null; n = n.parent) {
+        board.retractMove(n.move);
+      }
+    }
+    return result(root);
+  }
+
+  /**
+   * Return the number of nodes created by the last search.
+   */
+  long getNodes() {
+    return nodes;
+  }
+
+  /**
+   * Return the move at the root that proves it, if the attacker is to move
+   * and the root is proven.
+   * @return the packed move, or PackedMove.NONE
+   */
+  int provingMove() {
+    if (root == null || root.and || root.proof != 0) {
+      return PackedMove.NONE;
+    }
+    for (Node child : root.children) {
+      if (child.proof == 0) {
+        return child.move;
+      }
+    }
+    return PackedMove.NONE;
+  }
+
+  /**
+   * Return the result of a move at the root after the last search.
+   * A move is only solved when the search has expanded the root.
+   * @param move  A packed move of the player to move at the root
+   * @return PROVEN if the attacker can force a network after the move,
+   *  DISPROVEN if the defender can, or UNKNOWN
+   */
+  int result(int move) {
+    if (root == null || root.children == null) {
+      return UNKNOWN;
+    }
+    for (Node child : root.children) {
+      if (child.move == move) {
+        return result(child);
+      }
+    }
+    return UNKNOWN;
+  }
+
+  private static int result(Node n) {
+    if (n.proof == 0) {
+      return PROVEN;
+    }
+    if (n.disproof == 0) {
+      return DISPROVEN;
+    }
+    return UNKNOWN;
+  }
+
+  //walk down from the root, making the moves on the board, to the leaf
+  //whose proof number is the proof number of an OR node on the way or
+  //whose disproof number is the disproof number of an AND node on the way
+  private Node mostProving() {
+    Node n = root;
+    while (n.children != null) {
+      Node next = null;
+      for (Node child : n.children) {
+        if (n.and? child.disproof == n.disproof : child.proof == n.proof) {
+          next = child;
+          break;
+        }
+      }
+      n = next;
+      board.move(n.move, n.and? attacker:defender);
+    }
+    return n;
+  }
+
+  //create the children of a leaf, with the moves of the leaf made on the board
+  private void expand(Node leaf) {
+    int color = leaf.and? defender:attacker;
+    int count = board.movesGenerator(color, moves);
+    Node[] children = new Node[count];
+    int size = 0;
+    for (int i = 0; i < count; i++) {
+      int m = moves[i];
+      Node child = new Node(m, leaf, !leaf.and);
+      if (board.move(m, color)) {
+        int other = color == attacker? defender:attacker;
+        int winner = board.success(other)? other : board.success(color)? color : -1;
+        if (winner == attacker) {
+          child.proof = 0;
+          child.disproof = INFINITY;
+        } else if (winner == defender) {
+          child.proof = INFINITY;
+          child.disproof = 0;
+        }
+        children[size++] = child;
+      }
+      board.retractMove(m);
+    }
+    nodes += size;
+    leaf.children = Arrays.copyOf(children, size);
+    if (size == 0) {
+      //a player without a move loses
+      leaf.proof = leaf.and? 0 : INFINITY;
+      leaf.disproof = leaf.and? INFINITY : 0;
+    }
+  }
+
+  //set the proof and disproof numbers of a node and its ancestors from their children
+  private void update(Node n) {
+    for (; n != null; n = n.parent) {
+      if (n.children.length > 0) {
+        int proof = n.and? 0 : INFINITY;
+        int disproof = n.and? INFINITY : 0;
+        for (Node child : n.children) {
+          if (n.and) {
+            proof = add(proof, child.proof);
+            disproof = Math.min(disproof, child.disproof);
+          } else {
+            proof = Math.min(proof, child.proof);
+            disproof = add(disproof, child.disproof);
+          }
+        }
+        n.proof = proof;
+        n.disproof = disproof;
+      }
+    }
+  }
+
+  //add proof numbers, infinity stays infinity
+  private static int add(int a, int b) {
+    long sum = (long) a + b;
+    return sum >= INFINITY? INFINITY : (int) sum;
+  }
+}
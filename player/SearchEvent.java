@@ -0,0 +1,44 @@
+package player;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *  A Java Flight Recorder event for every search of the machine player.
+ *  It is only recorded when a recording enables it, for example with
+ *  java -XX:StartFlightRecording=settings=profile Network human machine
+ *  and costs next to nothing otherwise.
+ */
+@Name("player.Search")
+@Label("Machine Player Search")
+@Category("Network")
+@Description("A search of the machine player for its next move")
+final class SearchEvent extends Event {
+
+  @Label("Nodes")
+  long nodes;
+
+  @Label("Nodes per Second")
+  double nodesPerSecond;
+
+  @Label("Completed Depth")
+  int completedDepth;
+
+  @Label("Max Depth")
+  int maxDepth;
+
+  @Label("Table Hit Rate")
+  double tableHitRate;
+
+  @Label("First Move Cutoff Rate")
+  double firstMoveCutoffRate;
+
+  @Label("Illegal Moves")
+  long illegalMoves;
+
+  @Label("Move")
+  String move;
+}
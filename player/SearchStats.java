@@ -0,0 +1,186 @@
+package player;
+
+import java.util.Arrays;
+
+/**
+ *  A snapshot of the statistics of one search of the machine player, taken
+ *  when chooseMove returns.  The counters are plain fields of each search
+ *  thread and are only added up when the search is done, so collecting them
+ *  costs the search no synchronization.
+ */
+public final class SearchStats {
+
+  //cutoffs are counted by the index of the move that caused them,
+  //the last bucket counts the cutoffs of all later moves
+  public static final int CUTOFF_BUCKETS = 8;
+
+  private final long nodes;
+  private final long nanos;
+  private final int completedDepth;
+  private final int maxDepth;
+  private final long tableProbes;
+  private final long tableHits;
+  private final long illegalMoves;
+  private final long solverNodes;
+  private final long[] cutoffs;
+  private final long[] iterationNanos;
+
+  /**
+   *  Counters of a running search.  Every search thread has its own.
+   */
+  static final class Counters {
+    //positions visited
+    long nodes;
+    long tableProbes;
+    //probes that found an entry of the position
+    long tableHits;
+    //moves that were made and taken back because they were not legal
+    long illegalMoves;
+    //deepest ply searched
+    int maxDepth;
+    //nodes of the proof-number search
+    long solverNodes;
+    final long[] cutoffs = new long[CUTOFF_BUCKETS];
+
+    void cutoff(int index) {
+      cutoffs[Math.min(index, CUTOFF_BUCKETS - 1)]++;
+    }
+
+    void add(Counters c) {
+      nodes += c.nodes;
+      tableProbes += c.tableProbes;
+      tableHits += c.tableHits;
+      illegalMoves += c.illegalMoves;
+      solverNodes += c.solverNodes;
+      maxDepth = Math.max(maxDepth, c.maxDepth);
+      for (int i = 0; i < CUTOFF_BUCKETS; i++) {
+        cutoffs[i] += c.cutoffs[i];
+      }
+    }
+
+    void clear() {
+      nodes = 0;
+      tableProbes = 0;
+      tableHits = 0;
+      illegalMoves = 0;
+      solverNodes = 0;
+      maxDepth = 0;
+      Arrays.fill(cutoffs, 0);
+    }
+  }
+
+  SearchStats(Counters counters, long nanos, int completedDepth, long[] iterationNanos) {
+    this.nodes = counters.nodes;
+    this.nanos = nanos;
+    this.completedDepth = completedDepth;
+    this.maxDepth = counters.maxDepth;
+    this.tableProbes = counters.tableProbes;
+    this.tableHits = counters.tableHits;
+    this.illegalMoves = counters.illegalMoves;
+    this.solverNodes = counters.solverNodes;
+    this.cutoffs = counters.cutoffs.clone();
+    this.iterationNanos = iterationNanos.clone();
+  }
+
+  /**
+   * Return the number of positions visited by all threads of the search.
+   */
+  public long getNodes() {
+    return nodes;
+  }
+
+  /**
+   * Return the wall clock time of the search in nanoseconds.
+   */
+  public long getNanos() {
+    return nanos;
+  }
+
+  public double getNodesPerSecond() {
+    return nanos == 0? 0 : nodes * 1e9 / nanos;
+  }
+
+  /**
+   * Return the deepest iteration the search completed.
+   */
+  public int getCompletedDepth() {
+    return completedDepth;
+  }
+
+  /**
+   * Return the deepest ply any thread of the search reached.
+   */
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  public long getTableProbes() {
+    return tableProbes;
+  }
+
+  public long getTableHits() {
+    return tableHits;
+  }
+
+  /**
+   * Return the share of the table probes that found an entry of the position.
+   */
+  public double getTableHitRate() {
+    return tableProbes == 0? 0 : (double) tableHits / tableProbes;
+  }
+
+  /**
+   * Return the number of moves that were made and taken back again because
+   * they turned out not to be legal.
+   */
+  public long getIllegalMoves() {
+    return illegalMoves;
+  }
+
+  /**
+   * Return the number of nodes of the proof-number search before the search.
+   */
+  public long getSolverNodes() {
+    return solverNodes;
+  }
+
+  /**
+   * Return the number of cutoffs caused by the move at each index of the
+   * searched moves of a position.  Good move ordering puts most cutoffs at
+   * index 0.  The last element counts all cutoffs at CUTOFF_BUCKETS-1 or later.
+   */
+  public long[] getCutoffs() {
+    return cutoffs.clone();
+  }
+
+  /**
+   * Return the share of the cutoffs caused by the first move searched.
+   */
+  public double getFirstMoveCutoffRate() {
+    long total = 0;
+    for (long c : cutoffs) {
+      total += c;
+    }
+    return total == 0? 0 : (double) cutoffs[0] / total;
+  }
+
+  /**
+   * Return the time of every completed iteration of iterative deepening in
+   * nanoseconds, in order of depth.  A search without a time limit has a
+   * single iteration to the full depth.
+   */
+  public long[] getIterationNanos() {
+    return iterationNanos.clone();
+  }
+
+  public String toString() {
+    return "nodes: " + nodes
+        + ", nodes/s: " + Math.round(getNodesPerSecond())
+        + ", depth: " + completedDepth + "/" + maxDepth
+        + ", table hits: " + Math.round(100 * getTableHitRate()) + "%"
+        + ", cutoffs: " + Arrays.toString(cutoffs)
+        + ", illegal moves: " + illegalMoves
+        + ", solver nodes: " + solverNodes
+        + ", iterations (ns): " + Arrays.toString(iterationNanos);
+  }
+}
@@ -0,0 +1,115 @@
+package player;
+
+//Bitboard helpers for the 8-by-8 board.
+//A square (x, y) is numbered y*8 + x, so every row of the board is one byte
+//of a long and bit i of a mask is set when square i is in the mask.
+final class Squares {
+
+  public static final int SIZE = 8;
+  public static final int NUM = SIZE * SIZE;
+
+  //the four corners
+  public static final long DEAD = bit(0, 0) | bit(SIZE-1, 0) | bit(0, SIZE-1) | bit(SIZE-1, SIZE-1);
+  //black goals are the top and bottom rows, white goals the left and right columns
+  public static final long TOP_ROW = 0xFFL & ~DEAD;
+  public static final long BOTTOM_ROW = (0xFFL << 56) & ~DEAD;
+  public static final long LEFT_COLUMN = 0x0101010101010101L & ~DEAD;
+  public static final long RIGHT_COLUMN = (0x0101010101010101L << 7) & ~DEAD;
+
+  //goal areas indexed by color, FIRST_GOAL is the up or left goal area
+  //and LAST_GOAL is the down or right goal area
+  public static final long[] FIRST_GOAL = {TOP_ROW, LEFT_COLUMN};
+  public static final long[] LAST_GOAL = {BOTTOM_ROW, RIGHT_COLUMN};
+  public static final long[] GOAL = {TOP_ROW | BOTTOM_ROW, LEFT_COLUMN | RIGHT_COLUMN};
+
+  //the eight directions, a direction d and (d + 4) % 8 are opposite
+  public static final int[] DX = {1, 1, 0, -1, -1, -1, 0, 1};
+  public static final int[] DY = {0, 1, 1, 1, 0, -1, -1, -1};
+
+  //DIRECTION[a][b] is the direction from square a to square b,
+  //or -1 if the squares are not on a common row, column or diagonal
+  public static final int[][] DIRECTION = new int[NUM][NUM];
+  //BETWEEN[a][b] holds the squares strictly between a and b on their line
+  public static final long[][] BETWEEN = new long[NUM][NUM];
+  //RAYS[a][d] holds the squares from a to the border in direction d, a excluded
+  public static final long[][] RAYS = new long[NUM][8];
+  //NEIGHBOURS[a] holds the up to eight squares adjacent to a
+  public static final long[] NEIGHBOURS = new long[NUM];
+
+  //the symmetries of the board that keep the goal areas of both colors:
+  //identity, left-right mirror, top-bottom mirror and 180 degree rotation
+  public static final int SYMMETRIES = 4;
+  //SYMMETRY[s][a] is the square that a is mapped to by symmetry s,
+  //every symmetry is its own inverse
+  public static final int[][] SYMMETRY = new int[SYMMETRIES][NUM];
+
+  static {
+    for (int a = 0; a < NUM; a++) {
+      for (int b = 0; b < NUM; b++) {
+        DIRECTION[a][b] = -1;
+      }
+      for (int d = 0; d < 8; d++) {
+        long between = 0;
+        int x = x(a) + DX[d];
+        int y = y(a) + DY[d];
+        while (onBoard(x, y)) {
+          int b = square(x, y);
+          DIRECTION[a][b] = d;
+          BETWEEN[a][b] = between;
+          between |= bit(b);
+          x += DX[d];
+          y += DY[d];
+        }
+        RAYS[a][d] = between;
+        if (onBoard(x(a) + DX[d], y(a) + DY[d])) {
+          NEIGHBOURS[a] |= bit(x(a) + DX[d], y(a) + DY[d]);
+        }
+      }
+      SYMMETRY[0][a] = a;
+      SYMMETRY[1][a] = square(SIZE-1 - x(a), y(a));
+      SYMMETRY[2][a] = square(x(a), SIZE-1 - y(a));
+      SYMMETRY[3][a] = square(SIZE-1 - x(a), SIZE-1 - y(a));
+    }
+  }
+
+  private Squares() {
+  }
+
+  public static int square(int x, int y) {
+    return y * SIZE + x;
+  }
+
+  public static int x(int square) {
+    return square & (SIZE - 1);
+  }
+
+  public static int y(int square) {
+    return square >>> 3;
+  }
+
+  public static long bit(int square) {
+    return 1L << square;
+  }
+
+  public static long bit(int x, int y) {
+    return 1L << square(x, y);
+  }
+
+  //indicate whether two squares are on a common row, column or diagonal
+  public static boolean aligned(int a, int b) {
+    return DIRECTION[a][b] >= 0;
+  }
+
+  //return the squares adjacent to any square of a mask
+  public static long neighbours(long squares) {
+    long result = 0;
+    for (; squares != 0; squares &= squares - 1) {
+      result |= NEIGHBOURS[Long.numberOfTrailingZeros(squares)];
+    }
+    return result;
+  }
+
+  public static boolean onBoard(int x, int y) {
+    return x >= 0 && x < SIZE && y >= 0 && y < SIZE;
+  }
+}
@@ -0,0 +1,78 @@
+package player;
+
+import java.util.Arrays;
+
+/**
+ *  A fixed-size hash table of search results indexed by Zobrist key.
+ *  Each slot is two longs: the packed data and the key XORed with the data.
+ *  A slot is only trusted when XORing its two words gives back the probed key,
+ *  so a torn write from another thread reads as a miss instead of a wrong entry
+ *  and the table needs no locks.
+ *
+ *  Data layout: bits 0-31 score, bits 32-39 depth, bits 40-41 bound type,
+ *  bits 42-55 packed move, bit 63 set on every stored entry.
+ */
+final class TranspositionTable {
+
+  public static final int EXACT = 0;
+  public static final int LOWER = 1;
+  public static final int UPPER = 2;
+
+  private static final long USED = 1L << 63;
+
+  private final long[] slots;
+  private final int mask;
+
+  /**
+   * Creates a table.
+   * @param size  The number of entries, rounded down to a power of two
+   */
+  TranspositionTable(int size) {
+    int entries = Integer.highestOneBit(Math.max(size, 1));
+    slots = new long[entries * 2];
+    mask = entries - 1;
+  }
+
+  // Return the data stored for the key, or 0 if there is none.
+  public long probe(long key) {
+    int i = ((int) key & mask) << 1;
+    long data = slots[i + 1];
+    if (data != 0 && (slots[i] ^ data) == key) {
+      return data;
+    }
+    return 0;
+  }
+
+  // Store a result, keeping a deeper result of the same position.
+  public void store(long key, int score, int depth, int bound, int move) {
+    int i = ((int) key & mask) << 1;
+    long old = slots[i + 1];
+    if (old != 0 && (slots[i] ^ old) == key && depth(old) > depth) {
+      return;
+    }
+    long data = USED | ((long) move << 42) | ((long) bound << 40)
+        | ((long) depth << 32) | (score & 0xFFFFFFFFL);
+    slots[i] = key ^ data;
+    slots[i + 1] = data;
+  }
+
+  public void clear() {
+    Arrays.fill(slots, 0);
+  }
+
+  public static int score(long data) {
+    return (int) data;
+  }
+
+  public static int depth(long data) {
+    return (int) (data >>> 32) & 0xFF;
+  }
+
+  public static int bound(long data) {
+    return (int) (data >>> 40) & 3;
+  }
+
+  public static int move(long data) {
+    return (int) (data >>> 42) & 0x3FFF;
+  }
+}
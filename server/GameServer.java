@@ -0,0 +1,435 @@
+/* GameServer.java */
+
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import player.Board;
+import player.Difficulty;
+import player.MachinePlayer;
+import player.Move;
+
+/**
+ *  A server that hosts many games against the machine player at once over
+ *  the line protocol of Protocol.  One thread does all the network I/O with
+ *  a selector and never searches.  The searches run on a fixed pool with a
+ *  bounded queue, and a request that finds the queue full is refused with
+ *  ERR busy, so a burst of searches cannot starve the I/O thread or grow
+ *  without bound.  A connection can play up to MAX_GAMES games at once,
+ *  each game has one request in progress at most.
+ *
+ *  Usage: java server.GameServer [-port n] [-threads n] [-queue n]
+ */
+public class GameServer implements Runnable {
+
+  public static final int PORT = 7777;
+  public static final int QUEUE = 10000;
+  //entries of the table of every game, small enough for thousands of games
+  public static final int TABLE_SIZE = 1 << 13;
+  public static final int MAX_LINE = 256;
+  //games a connection can have open at once, every game holds a player
+  //and its table until it ends or is quit
+  public static final int MAX_GAMES = 16;
+  public static final Difficulty LEVEL = Difficulty.MEDIUM;
+
+  private final ServerSocketChannel serverChannel;
+  private final Selector selector;
+  private final ThreadPoolExecutor searches;
+  //replies of finished searches, written by the I/O thread
+  private final Queue<Reply> replies = new ConcurrentLinkedQueue<>();
+  //games by id, only used by the I/O thread
+  private final Map<Integer, Game> games = new HashMap<>();
+  private int nextId = 1;
+  private volatile boolean running = true;
+
+  /**
+   * A client connection.
+   */
+  private static final class Connection {
+    final SocketChannel channel;
+    final ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+    final Deque<ByteBuffer> out = new ArrayDeque<>();
+    final Set<Integer> games = new HashSet<>();
+
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+  }
+
+  /**
+   * A game against the machine player.  While a request of the game is
+   * searched, the game belongs to the search thread.
+   */
+  private static final class Game {
+    final int id;
+    final Connection connection;
+    final MachinePlayer player;
+    //the referee board of the game
+    final Board board = new Board();
+    final int machineColor;
+    int toMove = Board.WHITE;
+    boolean busy;
+    boolean over;
+
+    Game(int id, Connection connection, int machineColor, Difficulty level) {
+      this.id = id;
+      this.connection = connection;
+      this.machineColor = machineColor;
+      this.player = new MachinePlayer(machineColor, level, TABLE_SIZE);
+      this.player.setVerbose(false);
+    }
+  }
+
+  /**
+   * A reply of a finished search.
+   */
+  private static final class Reply {
+    final Game game;
+    final String line;
+
+    Reply(Game game, String line) {
+      this.game = game;
+      this.line = line;
+    }
+  }
+
+  /**
+   * Creates a server listening on a port.
+   * @param port  The port, 0 for any free port
+   * @param threads  The number of search threads
+   * @param queue  The number of searches that can wait for a thread
+   */
+  public GameServer(int port, int threads, int queue) throws IOException {
+    selector = Selector.open();
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.bind(new InetSocketAddress("localhost", port), 1024);
+    serverChannel.configureBlocking(false);
+    serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    searches = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(queue));
+  }
+
+  public int getPort() {
+    return serverChannel.socket().getLocalPort();
+  }
+
+  /**
+   * Serve until close is called.
+   */
+  public void run() {
+    try {
+      while (running) {
+        selector.select();
+        writeReplies();
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          try {
+            if (!key.isValid()) {
+              continue;
+            }
+            if (key.isAcceptable()) {
+              accept();
+            }
+            if (key.isValid() && key.isReadable()) {
+              read(key);
+            }
+            if (key.isValid() && key.isWritable()) {
+              flush(key);
+            }
+          } catch (IOException e) {
+            close(key);
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("the server stopped", e);
+    } finally {
+      searches.shutdownNow();
+    }
+  }
+
+  /**
+   * Stop the server and close its port.
+   */
+  public void close() throws IOException {
+    running = false;
+    selector.wakeup();
+    serverChannel.close();
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel = serverChannel.accept();
+    if (channel == null) {
+      return;
+    }
+    channel.configureBlocking(false);
+    channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+  }
+
+  private void read(SelectionKey key) throws IOException {
+    Connection connection = (Connection) key.attachment();
+    if (connection.channel.read(connection.in) < 0) {
+      close(key);
+      return;
+    }
+    ByteBuffer in = connection.in;
+    in.flip();
+    int start = 0;
+    for (int i = 0; i < in.limit(); i++) {
+      if (in.get(i) == '\n') {
+        String line = new String(in.array(), start, i - start, StandardCharsets.US_ASCII).trim();
+        if (!line.isEmpty()) {
+          handle(connection, line);
+        }
+        start = i + 1;
+      }
+    }
+    in.position(start);
+    in.compact();
+    if (!in.hasRemaining()) {
+      //a line longer than MAX_LINE is not part of the protocol
+      close(key);
+    }
+  }
+
+  //handle a request on the I/O thread, searches are handed to the pool
+  private void handle(Connection connection, String line) {
+    String[] words = line.split("\\s+");
+    String command = words[0].toUpperCase();
+    if (command.equals(Protocol.NEW)) {
+      newGame(connection, words);
+      return;
+    }
+    Game game = null;
+    if (words.length > 1) {
+      try {
+        game = games.get(Integer.parseInt(words[1]));
+      } catch (NumberFormatException e) {
+        game = null;
+      }
+    }
+    if (game == null || game.connection != connection) {
+      send(connection, Protocol.ERR + " " + (words.length > 1? words[1]:"-") + " no such game");
+      return;
+    }
+    if (game.busy) {
+      send(connection, Protocol.ERR + " " + game.id + " busy");
+      return;
+    }
+    switch (command) {
+    case Protocol.QUIT:
+      endGame(game);
+      send(connection, Protocol.OK + " " + game.id);
+      break;
+    case Protocol.GO:
+      if (game.toMove != game.machineColor) {
+        send(connection, Protocol.ERR + " " + game.id + " not the turn of the machine");
+      } else {
+        search(game, null);
+      }
+      break;
+    case Protocol.MOVE:
+      Move m;
+      try {
+        m = Protocol.parse(words, 2);
+      } catch (IllegalArgumentException e) {
+        send(connection, Protocol.ERR + " " + game.id + " " + e.getMessage());
+        return;
+      }
+      if (game.toMove == game.machineColor || !game.board.isValidMove(game.toMove, m)) {
+        send(connection, Protocol.ERR + " " + game.id + " illegal move");
+      } else {
+        search(game, m);
+      }
+      break;
+    default:
+      send(connection, Protocol.ERR + " " + game.id + " unknown request");
+    }
+  }
+
+  private void newGame(Connection connection, String[] words) {
+    if (connection.games.size() >= MAX_GAMES) {
+      send(connection, Protocol.ERR + " - too many games");
+      return;
+    }
+    int color;
+    Difficulty level = LEVEL;
+    try {
+      if (words.length < 2 || !(words[1].equalsIgnoreCase("black") || words[1].equalsIgnoreCase("white"))) {
+        throw new IllegalArgumentException();
+      }
+      color = words[1].equalsIgnoreCase("black")? Board.BLACK:Board.WHITE;
+      if (words.length > 2) {
+        level = Difficulty.valueOf(words[2].toUpperCase());
+      }
+    } catch (IllegalArgumentException e) {
+      send(connection, Protocol.ERR + " - usage: NEW black|white [level]");
+      return;
+    }
+    Game game = new Game(nextId++, connection, color, level);
+    games.put(game.id, game);
+    connection.games.add(game.id);
+    send(connection, Protocol.OK + " " + game.id);
+  }
+
+  /**
+   * Hand a move of the human player, if any, and the reply of the machine
+   * player to the search pool
+   */
+  private void search(final Game game, final Move humanMove) {
+    game.busy = true;
+    try {
+      searches.execute(new Runnable() {
+        public void run() {
+          replies.add(new Reply(game, play(game, humanMove)));
+          selector.wakeup();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      game.busy = false;
+      send(game.connection, Protocol.ERR + " " + game.id + " busy");
+    }
+  }
+
+  //make the moves of a game on a search thread and return the reply
+  private static String play(Game game, Move humanMove) {
+    int humanColor = game.machineColor == Board.BLACK? Board.WHITE:Board.BLACK;
+    if (humanMove != null) {
+      game.board.move(humanMove, humanColor);
+      game.player.opponentMove(humanMove);
+      game.toMove = game.machineColor;
+      String state = state(game.board, humanColor, game.machineColor);
+      if (!state.equals(Protocol.PLAYING)) {
+        game.over = true;
+        return Protocol.OVER + " " + game.id + " " + state;
+      }
+    }
+    Move m = game.player.chooseMove();
+    if (m == null) {
+      game.over = true;
+      return Protocol.OVER + " " + game.id + " " + Protocol.HUMAN_WON;
+    }
+    game.board.move(m, game.machineColor);
+    game.toMove = humanColor;
+    String state = state(game.board, game.machineColor, game.machineColor);
+    game.over = !state.equals(Protocol.PLAYING);
+    return Protocol.MOVE + " " + game.id + " " + state + " " + Protocol.format(m);
+  }
+
+  //return the state of a game after a move of the mover
+  //a move that completes both networks wins for the opponent
+  private static String state(Board board, int mover, int machineColor) {
+    int other = mover == Board.BLACK? Board.WHITE:Board.BLACK;
+    int winner = board.success(other)? other : board.success(mover)? mover : -1;
+    if (winner < 0) {
+      return Protocol.PLAYING;
+    }
+    return winner == machineColor? Protocol.MACHINE_WON : Protocol.HUMAN_WON;
+  }
+
+  //send the replies of the finished searches
+  private void writeReplies() {
+    Reply reply;
+    while ((reply = replies.poll()) != null) {
+      Game game = reply.game;
+      game.busy = false;
+      if (!games.containsKey(game.id)) {
+        //the game was ended or its connection closed during the search
+        game.player.close();
+        continue;
+      }
+      if (game.over) {
+        endGame(game);
+      }
+      send(game.connection, reply.line);
+    }
+  }
+
+  private void endGame(Game game) {
+    games.remove(game.id);
+    game.connection.games.remove(game.id);
+    //a game that is searched is closed when its search is done
+    if (!game.busy) {
+      game.player.close();
+    }
+  }
+
+  private void send(Connection connection, String line) {
+    connection.out.add(ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.US_ASCII)));
+    SelectionKey key = connection.channel.keyFor(selector);
+    if (key == null || !key.isValid()) {
+      return;
+    }
+    try {
+      flush(key);
+    } catch (IOException e) {
+      close(key);
+    }
+  }
+
+  //write as much as the socket takes, and wait for it to take the rest
+  private void flush(SelectionKey key) throws IOException {
+    Connection connection = (Connection) key.attachment();
+    while (!connection.out.isEmpty()) {
+      ByteBuffer buffer = connection.out.peek();
+      connection.channel.write(buffer);
+      if (buffer.hasRemaining()) {
+        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        return;
+      }
+      connection.out.poll();
+    }
+    key.interestOps(SelectionKey.OP_READ);
+  }
+
+  private void close(SelectionKey key) {
+    Connection connection = (Connection) key.attachment();
+    key.cancel();
+    if (connection == null) {
+      return;
+    }
+    for (int id : connection.games) {
+      Game game = games.remove(id);
+      if (game != null && !game.busy) {
+        game.player.close();
+      }
+    }
+    connection.games.clear();
+    try {
+      connection.channel.close();
+    } catch (IOException e) {
+      //the connection is gone either way
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    int port = PORT;
+    int threads = Math.max(Runtime.getRuntime().availableProcessors() - 1, 1);
+    int queue = QUEUE;
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+      case "-port":
+        port = Integer.parseInt(args[i + 1]);
+        break;
+      case "-threads":
+        threads = Integer.parseInt(args[i + 1]);
+        break;
+      case "-queue":
+        queue = Integer.parseInt(args[i + 1]);
+        break;
+      default:
+        throw new IllegalArgumentException("unknown option " + args[i]);
+      }
+    }
+    GameServer server = new GameServer(port, threads, queue);
+    System.out.println("serving on port " + server.getPort() + " with " + threads + " search threads");
+    server.run();
+  }
+}
@@ -0,0 +1,206 @@
+/* LoadClient.java */
+
+package server;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import bench.Percentiles;
+import player.Board;
+import player.Move;
+import player.PackedMove;
+
+/**
+ *  Loads a game server with many games at once.  Every client has its own
+ *  connection and plays its games one after another with random legal
+ *  moves, so the server sees as many games in progress as there are
+ *  clients.  The client reports the moves per second of the server and
+ *  the latency of a machine move as the client sees it.
+ *
+ *  Usage: java server.LoadClient [-host name] [-port n] [-clients n]
+ *         [-games n] [-level name] [-seed n]
+ */
+public class LoadClient {
+
+  public static final int CLIENTS = 100;
+  public static final int GAMES = 5;
+  public static final String LEVEL = "beginner";
+  public static final long SEED = 61;
+  //a game that lasts longer is ended by the client, the step phase can go on forever
+  public static final int MAX_PLIES = 200;
+
+  private final String host;
+  private final int port;
+  private final String level;
+  private final long seed;
+
+  /**
+   * The results of one client.
+   */
+  private static final class Result {
+    final List<Long> latencies = new ArrayList<>();
+    int games;
+    int errors;
+  }
+
+  public LoadClient(String host, int port, String level, long seed) {
+    this.host = host;
+    this.port = port;
+    this.level = level;
+    this.seed = seed;
+  }
+
+  /**
+   * Play games on one connection
+   * @param client  The number of the client
+   * @param games  The number of games to play
+   */
+  private Result play(int client, int games) throws IOException {
+    Result result = new Result();
+    Random random = new Random(seed + client);
+    try (Socket socket = new Socket(host, port)) {
+      socket.setTcpNoDelay(true);
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+      Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+      for (int g = 0; g < games; g++) {
+        int machineColor = (client + g) % 2 == 0? Board.BLACK:Board.WHITE;
+        if (playGame(in, out, machineColor, random, result)) {
+          result.games++;
+        } else {
+          result.errors++;
+        }
+      }
+    }
+    return result;
+  }
+
+  //play a game and return false if the server refused a request
+  private boolean playGame(BufferedReader in, Writer out, int machineColor, Random random, Result result)
+      throws IOException {
+    int humanColor = machineColor == Board.BLACK? Board.WHITE:Board.BLACK;
+    String[] reply = request(in, out, Protocol.NEW + " " + (machineColor == Board.BLACK? "black":"white") + " " + level);
+    if (!reply[0].equals(Protocol.OK)) {
+      return false;
+    }
+    String id = reply[1];
+    Board board = new Board();
+    int[] moves = new int[Board.MAX_MOVES];
+    String line = Protocol.GO + " " + id;
+    if (machineColor == Board.BLACK) {
+      line = Protocol.MOVE + " " + id + " " + Protocol.format(randomMove(board, humanColor, moves, random));
+    }
+    for (int ply = 0; ply < MAX_PLIES; ply += 2) {
+      long start = System.nanoTime();
+      reply = request(in, out, line);
+      if (reply[0].equals(Protocol.OVER)) {
+        return true;
+      }
+      if (!reply[0].equals(Protocol.MOVE)) {
+        return false;
+      }
+      result.latencies.add(System.nanoTime() - start);
+      board.move(Protocol.parse(reply, 3), machineColor);
+      if (!reply[2].equals(Protocol.PLAYING)) {
+        return true;
+      }
+      Move m = randomMove(board, humanColor, moves, random);
+      if (m == null) {
+        //the client has no legal move left, which ends the game
+        break;
+      }
+      line = Protocol.MOVE + " " + id + " " + Protocol.format(m);
+    }
+    return request(in, out, Protocol.QUIT + " " + id)[0].equals(Protocol.OK);
+  }
+
+  //pick a random legal move and make it on the board,
+  //return null if the color has no legal move
+  private static Move randomMove(Board board, int color, int[] moves, Random random) {
+    int count = board.movesGenerator(color, moves);
+    if (count == 0) {
+      return null;
+    }
+    Move m = PackedMove.decode(moves[random.nextInt(count)]);
+    board.move(m, color);
+    return m;
+  }
+
+  private static String[] request(BufferedReader in, Writer out, String line) throws IOException {
+    out.write(line + "\n");
+    out.flush();
+    String reply = in.readLine();
+    if (reply == null) {
+      throw new EOFException("the server closed the connection");
+    }
+    return reply.split(" ");
+  }
+
+  /**
+   * Run the clients at once and print the results.
+   * @param clients  The number of connections
+   * @param games  The number of games of every connection
+   */
+  public void run(int clients, int games) throws InterruptedException, ExecutionException {
+    ExecutorService pool = Executors.newFixedThreadPool(clients);
+    List<Future<Result>> futures = new ArrayList<>();
+    long start = System.nanoTime();
+    for (int c = 0; c < clients; c++) {
+      final int client = c;
+      futures.add(pool.submit(() -> play(client, games)));
+    }
+    List<Long> latencies = new ArrayList<>();
+    int played = 0;
+    int errors = 0;
+    for (Future<Result> f : futures) {
+      Result r = f.get();
+      latencies.addAll(r.latencies);
+      played += r.games;
+      errors += r.errors;
+    }
+    long nanos = System.nanoTime() - start;
+    pool.shutdown();
+    Collections.sort(latencies);
+    System.out.printf("%d clients, %d games, %d refused, %d machine moves in %.1f s%n",
+        clients, played, errors, latencies.size(), nanos / 1e9);
+    System.out.printf("%.0f moves/s, latency p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+        latencies.size() * 1e9 / nanos, Percentiles.millis(latencies, 0.50),
+        Percentiles.millis(latencies, 0.90), Percentiles.millis(latencies, 0.99),
+        Percentiles.millis(latencies, 1.0));
+  }
+
+  public static void main(String[] args) throws Exception {
+    String host = "localhost";
+    int port = GameServer.PORT;
+    int clients = CLIENTS;
+    int games = GAMES;
+    String level = LEVEL;
+    long seed = SEED;
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+      case "-host":
+        host = args[i + 1];
+        break;
+      case "-port":
+        port = Integer.parseInt(args[i + 1]);
+        break;
+      case "-clients":
+        clients = Integer.parseInt(args[i + 1]);
+        break;
+      case "-games":
+        games = Integer.parseInt(args[i + 1]);
+        break;
+      case "-level":
+        level = args[i + 1];
+        break;
+      case "-seed":
+        seed = Long.parseLong(args[i + 1]);
+        break;
+      default:
+        throw new IllegalArgumentException("unknown option " + args[i]);
+      }
+    }
+    new LoadClient(host, port, level, seed).run(clients, games);
+  }
+}
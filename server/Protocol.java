@@ -0,0 +1,79 @@
+/* Protocol.java */
+
+package server;
+
+import player.Move;
+
+/**
+ *  The line protocol of the game server.  Every request and every reply is
+ *  one line of words separated by spaces.
+ *
+ *  Requests:
+ *    NEW color [level]   start a game, the machine plays the given color,
+ *                        black or white, at a difficulty level
+ *    GO id               let the machine make the first move when it is white
+ *    MOVE id move        make a move of the human player
+ *    QUIT id             end a game
+ *
+ *  Replies:
+ *    OK id               the game was started or ended
+ *    MOVE id state move  the move of the machine and the state of the game
+ *    OVER id state       the move of the human player ended the game
+ *    ERR id reason       the request was refused, id is - if it has none
+ *
+ *  A move is ADD x y or STEP x1 y1 x2 y2, with the new square first as in
+ *  Move.  A state is PLAYING, MACHINE_WON or HUMAN_WON.
+ */
+public final class Protocol {
+
+  public static final String NEW = "NEW";
+  public static final String GO = "GO";
+  public static final String MOVE = "MOVE";
+  public static final String QUIT = "QUIT";
+  public static final String OK = "OK";
+  public static final String OVER = "OVER";
+  public static final String ERR = "ERR";
+
+  public static final String PLAYING = "PLAYING";
+  public static final String MACHINE_WON = "MACHINE_WON";
+  public static final String HUMAN_WON = "HUMAN_WON";
+
+  private Protocol() {
+  }
+
+  /**
+   * Return the words of a move
+   */
+  public static String format(Move m) {
+    if (m.moveKind == Move.ADD) {
+      return "ADD " + m.x1 + " " + m.y1;
+    }
+    return "STEP " + m.x1 + " " + m.y1 + " " + m.x2 + " " + m.y2;
+  }
+
+  /**
+   * Parse the words of a move
+   * @param words  The words of a line
+   * @param start  The index of the first word of the move
+   * @return the move
+   * @throws IllegalArgumentException if the words are not a move
+   */
+  public static Move parse(String[] words, int start) {
+    if (words.length > start + 2 && words[start].equals("ADD")) {
+      return new Move(coordinate(words[start + 1]), coordinate(words[start + 2]));
+    }
+    if (words.length > start + 4 && words[start].equals("STEP")) {
+      return new Move(coordinate(words[start + 1]), coordinate(words[start + 2]),
+          coordinate(words[start + 3]), coordinate(words[start + 4]));
+    }
+    throw new IllegalArgumentException("not a move");
+  }
+
+  private static int coordinate(String word) {
+    int c = Integer.parseInt(word);
+    if (c < 0 || c > 7) {
+      throw new IllegalArgumentException("not a square");
+    }
+    return c;
+  }
+}